@@ -0,0 +1,36 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Mensagens de exemplo para os benchmarks. O conteúdo é texto com palavras repetidas,
+ * parecido com o que chega no /api/send, para que a compressão tenha efeito realista.
+ */
+final class BenchmarkMessages {
+
+    private static final String[] WORDS = {
+            "mensagem", "servidor", "fila", "cassandra", "rabbitmq", "cliente", "envio",
+            "recebida", "olá", "concorrência", "distribuída", "teste", "lote", "status"
+    };
+
+    private BenchmarkMessages() {
+    }
+
+    static String content(int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder(size + 16);
+        while (builder.length() < size) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        builder.setLength(size);
+        return builder.toString();
+    }
+
+    static Message message(int contentSize) {
+        UUID id = Uuids.timeBased();
+        return new Message(id, "usuario-42", content(contentSize, 42), Uuids.unixTimestamp(id), "sent");
+    }
+}
@@ -0,0 +1,121 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversões do controller: corpo do /api/send para {@link Message}
+ * e lista de mensagens para a resposta do /api/receive.
+ * Os métodos *ViaMap reproduzem o mapeamento anterior (Map genérico na entrada, um Map.of
+ * por mensagem na saída) para comparar a alocação com -prof gc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerMappingBenchmark {
+
+    @Param({"64", "1024"})
+    public int contentSize;
+
+    @Param({"100"})
+    public int pageSize;
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    // Como no Spring MVC: o serializador de Message registrado no ObjectMapper
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new SimpleModule().addSerializer(Message.class, new MessageJsonSerializer()));
+    private SendMessageRequest request;
+    private byte[] requestBody;
+    private Message message;
+    private List<Message> page;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("sender", "usuario-42");
+        body.put("message", BenchmarkMessages.content(contentSize, 7));
+        request = new SendMessageRequest("usuario-42", BenchmarkMessages.content(contentSize, 7), null);
+        try {
+            requestBody = objectMapper.writeValueAsBytes(body);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        message = BenchmarkMessages.message(contentSize);
+        page = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            page.add(BenchmarkMessages.message(contentSize));
+        }
+    }
+
+    @Benchmark
+    public Message requestToMessage() {
+        return SimpleMessageController.newMessage(request);
+    }
+
+    @Benchmark
+    public Message parseSendRequest() throws Exception {
+        return SimpleMessageController.newMessage(objectMapper.readValue(requestBody, SendMessageRequest.class));
+    }
+
+    @Benchmark
+    public Message parseSendRequestViaMap() throws Exception {
+        Map<String, Object> body = objectMapper.readValue(requestBody, MAP_TYPE);
+        return SimpleMessageController.newMessage(new SendMessageRequest(
+                body.getOrDefault("sender", SendMessageRequest.DEFAULT_SENDER).toString(),
+                body.get("message").toString(),
+                null));
+    }
+
+    @Benchmark
+    public byte[] messageResponse() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] receivePageResponse() throws Exception {
+        return objectMapper.writeValueAsBytes(new ApiResponses.MessageList(page));
+    }
+
+    @Benchmark
+    public byte[] receivePageResponseViaMap() throws Exception {
+        List<Map<String, Object>> messages = new ArrayList<>(page.size());
+        for (Message each : page) {
+            messages.add(toMap(each));
+        }
+        return objectMapper.writeValueAsBytes(Map.of("status", "ok", "messages", messages, "count", messages.size()));
+    }
+
+    // Mapeamento usado pelo controller antes do MessageJsonSerializer
+    private static Map<String, Object> toMap(Message message) {
+        return Map.of(
+                "id", message.getId().toString(),
+                "sender", message.getSender(),
+                "message", message.getContent(),
+                "timestamp", message.getTimestamp(),
+                "status", message.getStatus()
+        );
+    }
+}
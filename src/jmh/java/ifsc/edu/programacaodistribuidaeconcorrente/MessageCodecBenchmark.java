@@ -0,0 +1,108 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialização da {@link Message} para o corpo AMQP: JSON (Jackson2JsonMessageConverter),
+ * codec binário e o caminho completo de publicação com compressão por limiar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int contentSize;
+
+    private MessageConverter jsonConverter;
+    private MessageConverter binaryConverter;
+    private MessagePostProcessor compressing;
+    private MessagePostProcessor decompressing;
+
+    private Message message;
+    private org.springframework.amqp.core.Message jsonMessage;
+    private org.springframework.amqp.core.Message binaryMessage;
+    private byte[] binaryBody;
+    private org.springframework.amqp.core.Message compressedJsonMessage;
+
+    @Setup
+    public void setup() throws Exception {
+        Jackson2JsonMessageConverter jackson = new Jackson2JsonMessageConverter();
+        jsonConverter = new NegotiatingMessageConverter(jackson, false);
+        binaryConverter = new NegotiatingMessageConverter(jackson, true);
+        PayloadCompressor compressor = new PayloadCompressor(true, 4096, 1, 16 * 1024 * 1024);
+        compressing = compressor.compressingPostProcessor();
+        decompressing = compressor.decompressingPostProcessor();
+
+        message = BenchmarkMessages.message(contentSize);
+        jsonMessage = jsonConverter.toMessage(message, new MessageProperties());
+        binaryMessage = binaryConverter.toMessage(message, new MessageProperties());
+        binaryBody = BinaryMessageCodec.encode(message);
+        compressedJsonMessage = compressing.postProcessMessage(jsonConverter.toMessage(message, new MessageProperties()));
+    }
+
+    @Benchmark
+    public org.springframework.amqp.core.Message jsonEncode() {
+        return jsonConverter.toMessage(message, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object jsonDecode() {
+        return jsonConverter.fromMessage(jsonMessage);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return BinaryMessageCodec.encode(message);
+    }
+
+    @Benchmark
+    public Message binaryDecode() {
+        return BinaryMessageCodec.decode(binaryBody);
+    }
+
+    @Benchmark
+    public Object binaryRoundTripThroughConverter() {
+        return binaryConverter.fromMessage(binaryConverter.toMessage(message, new MessageProperties()));
+    }
+
+    @Benchmark
+    public org.springframework.amqp.core.Message jsonEncodeCompressed() {
+        return compressing.postProcessMessage(jsonConverter.toMessage(message, new MessageProperties()));
+    }
+
+    @Benchmark
+    public Object jsonDecodeCompressed() {
+        // O post processor troca o corpo; trabalha em uma cópia para manter a entrada constante
+        org.springframework.amqp.core.Message copy = new org.springframework.amqp.core.Message(
+                compressedJsonMessage.getBody(), copyProperties(compressedJsonMessage.getMessageProperties()));
+        return jsonConverter.fromMessage(decompressing.postProcessMessage(copy));
+    }
+
+    private static MessageProperties copyProperties(MessageProperties source) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(source.getContentType());
+        properties.setContentEncoding(source.getContentEncoding());
+        properties.getHeaders().putAll(source.getHeaders());
+        return properties;
+    }
+}
@@ -0,0 +1,118 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinition;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinitions;
+import com.datastax.oss.driver.internal.core.cql.DefaultPreparedStatement;
+import com.datastax.oss.protocol.internal.ProtocolConstants;
+import com.datastax.oss.protocol.internal.response.result.ColumnSpec;
+import com.datastax.oss.protocol.internal.response.result.RawType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bind do INSERT de {@link MessageRepository} contra um PreparedStatement montado em memória,
+ * com os mesmos tipos das colunas de messages_by_sender. Mede a conversão da mensagem
+ * (day_bucket, message_time, compressão do conteúdo) e a serialização dos valores pelos codecs do driver.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementBindingBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int contentSize;
+
+    @Param({"true", "false"})
+    public boolean compression;
+
+    private PreparedStatement insert;
+    private PayloadCompressor compressor;
+    private Message message;
+    private MessageRepository.StoredContent content;
+
+    @Setup
+    public void setup() {
+        insert = stubPrepared(MessageRepository.INSERT_MESSAGE, List.of(
+                column("sender", ProtocolConstants.DataType.VARCHAR),
+                column("day_bucket", ProtocolConstants.DataType.DATE),
+                column("message_time", ProtocolConstants.DataType.TIMEUUID),
+                column("id", ProtocolConstants.DataType.UUID),
+                column("content", ProtocolConstants.DataType.VARCHAR),
+                column("content_blob", ProtocolConstants.DataType.BLOB),
+                column("timestamp", ProtocolConstants.DataType.BIGINT),
+                column("status", ProtocolConstants.DataType.VARCHAR)));
+        compressor = new PayloadCompressor(compression, 4096, 1, 16 * 1024 * 1024);
+        message = BenchmarkMessages.message(contentSize);
+        content = MessageRepository.storedContent(compressor, message);
+    }
+
+    @Benchmark
+    public BoundStatement bindInsert() {
+        return MessageRepository.bindInsert(insert, message, MessageRepository.storedContent(compressor, message));
+    }
+
+    @Benchmark
+    public BoundStatement bindInsertPrecomputedContent() {
+        return MessageRepository.bindInsert(insert, message, content);
+    }
+
+    private static ColumnSpec column(String name, int type) {
+        return new ColumnSpec("message_system", MessageRepository.TABLE, name, 0, RawType.PRIMITIVES.get(type));
+    }
+
+    private static PreparedStatement stubPrepared(String query, List<ColumnSpec> specs) {
+        List<ColumnDefinition> definitions = new ArrayList<>(specs.size());
+        for (ColumnSpec spec : specs) {
+            definitions.add(new DefaultColumnDefinition(spec, null));
+        }
+        return new DefaultPreparedStatement(
+                ByteBuffer.wrap(new byte[16]),
+                query,
+                DefaultColumnDefinitions.valueOf(definitions),
+                List.of(0, 1),
+                null,
+                DefaultColumnDefinitions.valueOf(Collections.emptyList()),
+                CqlIdentifier.fromCql("message_system"),
+                Collections.emptyMap(),
+                null,
+                null,
+                null,
+                null,
+                null,
+                Collections.emptyMap(),
+                null,
+                null,
+                null,
+                -1,
+                (ConsistencyLevel) null,
+                (ConsistencyLevel) null,
+                false,
+                CodecRegistry.DEFAULT,
+                ProtocolVersion.DEFAULT);
+    }
+}
@@ -0,0 +1,62 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.SystemConfig;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Broker AMQP 0-9-1 embarcado (Qpid Broker-J) com virtual host em memória.
+ * Substitui o RabbitMQ no teste de carga: aceita guest/guest, publisher confirms
+ * e mensagens mandatory, e não grava nada em disco além do diretório de trabalho temporário.
+ */
+@Slf4j
+public class EmbeddedAmqpBroker implements AutoCloseable {
+
+    private final SystemLauncher launcher = new SystemLauncher();
+    private final int port;
+    private final Path workDirectory;
+
+    public EmbeddedAmqpBroker(int port) throws IOException {
+        this.port = port > 0 ? port : freePort();
+        this.workDirectory = Files.createTempDirectory("loadtest-broker");
+    }
+
+    public void start() throws Exception {
+        Map<String, String> context = new HashMap<>();
+        context.put("qpid.amqp_port", String.valueOf(port));
+        context.put("qpid.work_dir", workDirectory.toString());
+        // Argumentos específicos do RabbitMQ (x-message-ttl, x-dead-letter-*) são registrados e ignorados
+        context.put("queue.behaviourOnUnknownDeclareArgument", "LOG");
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(SystemConfig.TYPE, "Memory");
+        attributes.put(SystemConfig.INITIAL_CONFIGURATION_LOCATION,
+                EmbeddedAmqpBroker.class.getResource("/loadtest-broker.json").toExternalForm());
+        attributes.put(SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false);
+        attributes.put(SystemConfig.CONTEXT, context);
+        launcher.startup(attributes);
+        log.info("✅ Broker AMQP embarcado na porta {}", port);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() {
+        launcher.shutdown();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
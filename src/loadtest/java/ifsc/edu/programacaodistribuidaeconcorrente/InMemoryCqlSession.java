@@ -0,0 +1,847 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.ExecutionInfo;
+import com.datastax.oss.driver.api.core.cql.PagingState;
+import com.datastax.oss.driver.api.core.cql.PrepareRequest;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.QueryTrace;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.detach.AttachmentPoint;
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
+import com.datastax.oss.driver.api.core.metrics.Metrics;
+import com.datastax.oss.driver.api.core.session.Request;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import com.datastax.oss.driver.api.core.type.reflect.GenericType;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinition;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinitions;
+import com.datastax.oss.driver.internal.core.cql.DefaultPagingState;
+import com.datastax.oss.driver.internal.core.cql.DefaultPreparedStatement;
+import com.datastax.oss.driver.internal.core.cql.DefaultRow;
+import com.datastax.oss.protocol.internal.response.result.ColumnSpec;
+import com.datastax.oss.protocol.internal.response.result.RawType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CqlSession em memória para o teste de carga. Interpreta apenas as queries de
+ * {@link MessageRepository}: os statements são preparados e o bind passa pelos codecs
+ * reais do driver, mas a execução acontece em mapas ordenados como as partições do Cassandra.
+ * Queries desconhecidas (DDL, tabelas de sistema) retornam um resultado vazio.
+ * TTLs e timestamps de escrita são ignorados: vale a última escrita a chegar.
+ * Uma latência fixa opcional simula a ida ao cluster.
+ */
+@Slf4j
+public class InMemoryCqlSession implements CqlSession {
+
+    private static final CodecRegistry CODECS = CodecRegistry.DEFAULT;
+    private static final ProtocolVersion PROTOCOL = ProtocolVersion.DEFAULT;
+    private static final Pattern SELECT_COLUMNS = Pattern.compile("^SELECT (.+?) FROM ", Pattern.CASE_INSENSITIVE);
+
+    // Tipos das colunas das tabelas e dos marcadores que não são colunas (LIMIT, minTimeuuid)
+    private static final Map<String, DataType> COLUMN_TYPES = Map.ofEntries(
+            Map.entry("sender", DataTypes.TEXT),
+            Map.entry("day_bucket", DataTypes.DATE),
+            Map.entry("message_time", DataTypes.TIMEUUID),
+            Map.entry("id", DataTypes.UUID),
+            Map.entry("content", DataTypes.TEXT),
+            Map.entry("content_blob", DataTypes.BLOB),
+            Map.entry("timestamp", DataTypes.BIGINT),
+            Map.entry("status", DataTypes.TEXT),
+            Map.entry("shard", DataTypes.INT),
+            Map.entry("idempotency_key", DataTypes.TEXT),
+            Map.entry("message_id", DataTypes.UUID),
+            Map.entry("owner", DataTypes.UUID),
+            Map.entry("messages", DataTypes.COUNTER),
+            Map.entry("[applied]", DataTypes.BOOLEAN),
+            Map.entry("[ttl]", DataTypes.INT),
+            Map.entry("[limit]", DataTypes.INT),
+            Map.entry("[from]", DataTypes.TIMESTAMP),
+            Map.entry("[to]", DataTypes.TIMESTAMP)
+    );
+
+    // message_time DESC, id ASC (messages_by_sender) e message_time ASC, id ASC (message_outbox)
+    private static final Comparator<UUID> TIME_ORDER = Comparator.comparingLong(UUID::timestamp)
+            .thenComparing(Comparator.naturalOrder());
+    private static final Comparator<Clustering> NEWEST_FIRST = Comparator.comparing(Clustering::time, TIME_ORDER.reversed())
+            .thenComparing(Clustering::id);
+    private static final Comparator<Clustering> OLDEST_FIRST = Comparator.comparing(Clustering::time, TIME_ORDER)
+            .thenComparing(Clustering::id);
+
+    private record Partition(String sender, LocalDate dayBucket) {
+    }
+
+    private record Clustering(UUID time, UUID id) {
+    }
+
+    private record IdempotencyKey(String sender, String key) {
+    }
+
+    // results: colunas do resultado de queries que não são SELECT (LWT)
+    private record Query(List<String> variables, List<String> results, Function<Object[], List<Map<String, Object>>> handler) {
+
+        Query(List<String> variables, Function<Object[], List<Map<String, Object>>> handler) {
+            this(variables, null, handler);
+        }
+    }
+
+    private final CqlIdentifier keyspace;
+    private final long latencyNanos;
+    private final Executor delayedExecutor;
+    private final Map<String, Query> queries = new HashMap<>();
+    private final Map<String, PreparedStatement> prepared = new ConcurrentHashMap<>();
+
+    private final Map<Partition, ConcurrentSkipListMap<Clustering, Map<String, Object>>> messages = new ConcurrentHashMap<>();
+    private final Map<Integer, ConcurrentSkipListMap<Clustering, Map<String, Object>>> outbox = new ConcurrentHashMap<>();
+    private final Map<IdempotencyKey, UUID> idempotencyKeys = new ConcurrentHashMap<>();
+    // Posse dos shards do outbox (sem expiração: a instância em memória é a única dona)
+    private final Map<Integer, UUID> outboxLeases = new ConcurrentHashMap<>();
+    // Tabelas counter de status: partição (scope ou sender) -> status -> valor
+    private final Map<String, ConcurrentSkipListMap<String, Long>> statusCounts = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<String, Long>> senderStatusCounts = new ConcurrentHashMap<>();
+
+    private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+
+    public InMemoryCqlSession(String keyspace, long latencyMicros) {
+        this.keyspace = CqlIdentifier.fromCql(keyspace);
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.delayedExecutor = CompletableFuture.delayedExecutor(latencyMicros, TimeUnit.MICROSECONDS);
+        registerQueries();
+        log.info("CqlSession em memória (keyspace {}, latência {}µs)", keyspace, latencyMicros);
+    }
+
+    private void registerQueries() {
+        queries.put(MessageRepository.INSERT_MESSAGE, new Query(
+                List.of("sender", "day_bucket", "message_time", "id", "content", "content_blob", "timestamp", "status"),
+                values -> {
+                    Map<String, Object> row = row(MessageRepository.INSERT_MESSAGE, values);
+                    partition((String) values[0], (LocalDate) values[1])
+                            .put(new Clustering((UUID) values[2], (UUID) values[3]), row);
+                    return List.of();
+                }));
+        queries.put(MessageRepository.UPDATE_STATUS, new Query(
+                List.of("status", "sender", "day_bucket", "message_time", "id"),
+                values -> {
+                    // UPDATE no Cassandra é upsert: cria a linha só com a chave e o status se ela não existir
+                    partition((String) values[1], (LocalDate) values[2]).merge(
+                            new Clustering((UUID) values[3], (UUID) values[4]),
+                            Map.of("sender", values[1], "day_bucket", values[2], "message_time", values[3],
+                                    "id", values[4], "status", values[0]),
+                            (existing, created) -> with(existing, "status", values[0]));
+                    return List.of();
+                }));
+        queries.put(MessageRepository.SELECT_MESSAGES, new Query(List.of(), values -> {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (ConcurrentSkipListMap<Clustering, Map<String, Object>> partition : messages.values()) {
+                rows.addAll(partition.values());
+            }
+            return rows;
+        }));
+        queries.put(MessageRepository.SELECT_LATEST_BY_SENDER, new Query(
+                List.of("sender", "day_bucket", "[limit]"),
+                values -> first(messages.get(new Partition((String) values[0], (LocalDate) values[1])), (Integer) values[2])));
+        queries.put(MessageRepository.SELECT_RANGE_BY_SENDER, new Query(
+                List.of("sender", "day_bucket", "[from]", "[to]"),
+                values -> {
+                    ConcurrentSkipListMap<Clustering, Map<String, Object>> partition =
+                            messages.get(new Partition((String) values[0], (LocalDate) values[1]));
+                    if (partition == null) {
+                        return List.of();
+                    }
+                    long from = ((Instant) values[2]).toEpochMilli();
+                    long to = ((Instant) values[3]).toEpochMilli();
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (Map.Entry<Clustering, Map<String, Object>> entry : partition.entrySet()) {
+                        long time = Uuids.unixTimestamp(entry.getKey().time());
+                        if (time >= from && time <= to) {
+                            rows.add(entry.getValue());
+                        }
+                    }
+                    return rows;
+                }));
+        queries.put(MessageRepository.INSERT_OUTBOX, new Query(
+                List.of("shard", "message_time", "id", "sender", "content", "content_blob", "timestamp", "status"),
+                values -> {
+                    outbox.computeIfAbsent((Integer) values[0], shard -> new ConcurrentSkipListMap<>(OLDEST_FIRST))
+                            .put(new Clustering((UUID) values[1], (UUID) values[2]), row(MessageRepository.INSERT_OUTBOX, values));
+                    return List.of();
+                }));
+        queries.put(MessageRepository.SELECT_OUTBOX, new Query(
+                List.of("shard", "[limit]"),
+                values -> first(outbox.get((Integer) values[0]), (Integer) values[1])));
+        queries.put(MessageRepository.SELECT_OUTBOX_AFTER, new Query(
+                List.of("shard", "message_time", "[limit]"),
+                values -> {
+                    ConcurrentSkipListMap<Clustering, Map<String, Object>> shard = outbox.get((Integer) values[0]);
+                    if (shard == null) {
+                        return List.of();
+                    }
+                    UUID after = (UUID) values[1];
+                    int limit = (Integer) values[2];
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (Map.Entry<Clustering, Map<String, Object>> entry : shard.entrySet()) {
+                        if (rows.size() >= limit) {
+                            break;
+                        }
+                        if (TIME_ORDER.compare(entry.getKey().time(), after) > 0) {
+                            rows.add(entry.getValue());
+                        }
+                    }
+                    return rows;
+                }));
+        queries.put(MessageRepository.DELETE_OUTBOX, new Query(
+                List.of("shard", "message_time", "id"),
+                values -> {
+                    ConcurrentSkipListMap<Clustering, Map<String, Object>> shard = outbox.get((Integer) values[0]);
+                    if (shard != null) {
+                        shard.remove(new Clustering((UUID) values[1], (UUID) values[2]));
+                    }
+                    return List.of();
+                }));
+        queries.put(MessageRepository.UPDATE_STATUS_IF_OPEN, new Query(
+                List.of("status", "sender", "day_bucket", "message_time", "id"),
+                List.of("[applied]", "status"),
+                values -> {
+                    ConcurrentSkipListMap<Clustering, Map<String, Object>> partition =
+                            messages.get(new Partition((String) values[1], (LocalDate) values[2]));
+                    if (partition == null) {
+                        return List.of(Map.of("[applied]", false));
+                    }
+                    // IF status IN ('sent', 'delivered'): quando não aplica, devolve o status atual
+                    Map<String, Object> result = new HashMap<>(Map.of("[applied]", false));
+                    partition.computeIfPresent(new Clustering((UUID) values[3], (UUID) values[4]), (key, existing) -> {
+                        Object status = existing.get("status");
+                        if (MessageStatus.SENT.value().equals(status) || MessageStatus.DELIVERED.value().equals(status)) {
+                            result.put("[applied]", true);
+                            return with(existing, "status", values[0]);
+                        }
+                        if (status != null) {
+                            result.put("status", status);
+                        }
+                        return existing;
+                    });
+                    return List.of(result);
+                }));
+        registerIdempotencyQueries();
+        registerStatusCountQueries();
+        registerOutboxLeaseQueries();
+    }
+
+    private void registerOutboxLeaseQueries() {
+        queries.put(MessageRepository.ACQUIRE_OUTBOX_LEASE, new Query(
+                List.of("shard", "owner", "[ttl]"),
+                List.of("[applied]", "owner"),
+                values -> {
+                    UUID existing = outboxLeases.putIfAbsent((Integer) values[0], (UUID) values[1]);
+                    return existing == null
+                            ? List.of(Map.of("[applied]", true))
+                            : List.of(Map.of("[applied]", false, "owner", existing));
+                }));
+        queries.put(MessageRepository.RENEW_OUTBOX_LEASE, new Query(
+                List.of("[ttl]", "owner", "shard", "owner"),
+                List.of("[applied]"),
+                values -> List.of(Map.of("[applied]", values[1].equals(outboxLeases.get((Integer) values[2]))))));
+        queries.put(MessageRepository.RELEASE_OUTBOX_LEASE, new Query(
+                List.of("shard", "owner"),
+                List.of("[applied]"),
+                values -> List.of(Map.of("[applied]", outboxLeases.remove((Integer) values[0], values[1])))));
+    }
+
+    private void registerStatusCountQueries() {
+        queries.put(MessageRepository.INCREMENT_STATUS_COUNT, new Query(
+                List.of("messages", "scope", "status"),
+                values -> increment(statusCounts, values)));
+        queries.put(MessageRepository.INCREMENT_SENDER_STATUS_COUNT, new Query(
+                List.of("messages", "sender", "status"),
+                values -> increment(senderStatusCounts, values)));
+        queries.put(MessageRepository.SELECT_STATUS_COUNTS, new Query(
+                List.of("scope"),
+                values -> counts(statusCounts.get((String) values[0]))));
+        queries.put(MessageRepository.SELECT_SENDER_STATUS_COUNTS, new Query(
+                List.of("sender"),
+                values -> counts(senderStatusCounts.get((String) values[0]))));
+    }
+
+    private static List<Map<String, Object>> increment(Map<String, ConcurrentSkipListMap<String, Long>> table, Object[] values) {
+        table.computeIfAbsent((String) values[1], key -> new ConcurrentSkipListMap<>())
+                .merge((String) values[2], (Long) values[0], Long::sum);
+        return List.of();
+    }
+
+    private static List<Map<String, Object>> counts(ConcurrentSkipListMap<String, Long> partition) {
+        if (partition == null) {
+            return List.of();
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(partition.size());
+        partition.forEach((status, count) -> rows.add(Map.of("status", status, "messages", count)));
+        return rows;
+    }
+
+    private void registerIdempotencyQueries() {
+        queries.put(MessageRepository.INSERT_IDEMPOTENCY_KEY, new Query(
+                List.of("sender", "idempotency_key", "message_id", "[ttl]"),
+                values -> {
+                    idempotencyKeys.put(new IdempotencyKey((String) values[0], (String) values[1]), (UUID) values[2]);
+                    return List.of();
+                }));
+        queries.put(MessageRepository.CLAIM_IDEMPOTENCY_KEY, new Query(
+                List.of("sender", "idempotency_key", "message_id", "[ttl]"),
+                List.of("[applied]", "message_id"),
+                values -> {
+                    // INSERT IF NOT EXISTS: quando não aplica, o Cassandra devolve a linha existente
+                    UUID existing = idempotencyKeys.putIfAbsent(new IdempotencyKey((String) values[0], (String) values[1]), (UUID) values[2]);
+                    return existing == null
+                            ? List.of(Map.of("[applied]", true))
+                            : List.of(Map.of("[applied]", false, "message_id", existing));
+                }));
+        queries.put(MessageRepository.DELETE_IDEMPOTENCY_KEY, new Query(
+                List.of("sender", "idempotency_key", "message_id"),
+                List.of("[applied]"),
+                values -> {
+                    // DELETE IF message_id = ?: só remove a chave que ainda pertence à mensagem
+                    boolean applied = idempotencyKeys.remove(new IdempotencyKey((String) values[0], (String) values[1]), values[2]);
+                    return List.of(Map.of("[applied]", applied));
+                }));
+    }
+
+    private ConcurrentSkipListMap<Clustering, Map<String, Object>> partition(String sender, LocalDate dayBucket) {
+        return messages.computeIfAbsent(new Partition(sender, dayBucket), key -> new ConcurrentSkipListMap<>(NEWEST_FIRST));
+    }
+
+    private Map<String, Object> row(String query, Object[] values) {
+        List<String> columns = queries.get(query).variables();
+        Map<String, Object> row = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            if (values[i] != null) {
+                row.put(columns.get(i), values[i]);
+            }
+        }
+        return row;
+    }
+
+    private static Map<String, Object> with(Map<String, Object> row, String column, Object value) {
+        Map<String, Object> copy = new HashMap<>(row);
+        copy.put(column, value);
+        return copy;
+    }
+
+    private static List<Map<String, Object>> first(ConcurrentSkipListMap<Clustering, Map<String, Object>> partition, int limit) {
+        if (partition == null) {
+            return List.of();
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(Math.min(limit, 128));
+        for (Map<String, Object> row : partition.values()) {
+            if (rows.size() >= limit) {
+                break;
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // Execução
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <RequestT extends Request, ResultT> ResultT execute(RequestT request, GenericType<ResultT> resultType) {
+        if (request instanceof PrepareRequest prepareRequest) {
+            PreparedStatement statement = preparedFor(prepareRequest.getQuery());
+            return (ResultT) (resultType.equals(PrepareRequest.ASYNC)
+                    ? CompletableFuture.completedFuture(statement)
+                    : statement);
+        }
+        Statement<?> statement = (Statement<?>) request;
+        if (resultType.equals(Statement.ASYNC)) {
+            CompletableFuture<AsyncResultSet> result = new CompletableFuture<>();
+            Runnable run = () -> {
+                try {
+                    result.complete(new InMemoryAsyncResultSet(run(statement), statement));
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            };
+            if (latencyNanos > 0) {
+                delayedExecutor.execute(run);
+            } else {
+                run.run();
+            }
+            return (ResultT) result;
+        }
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        return (ResultT) new InMemoryResultSet(run(statement), statement);
+    }
+
+    private PreparedStatement preparedFor(String query) {
+        return prepared.computeIfAbsent(query, key -> {
+            Query known = queries.get(key);
+            List<String> variables = known == null ? List.of() : known.variables();
+            List<ColumnDefinition> variableDefinitions = new ArrayList<>(variables.size());
+            for (int i = 0; i < variables.size(); i++) {
+                variableDefinitions.add(definition(variables.get(i), i));
+            }
+            return new DefaultPreparedStatement(
+                    ByteBuffer.wrap(Uuids.random().toString().getBytes()),
+                    key,
+                    DefaultColumnDefinitions.valueOf(variableDefinitions),
+                    List.of(),
+                    null,
+                    resultDefinitions(key),
+                    keyspace,
+                    Collections.emptyMap(),
+                    null,
+                    null,
+                    null,
+                    null,
+                    null,
+                    Collections.emptyMap(),
+                    null,
+                    null,
+                    null,
+                    -1,
+                    (ConsistencyLevel) null,
+                    (ConsistencyLevel) null,
+                    false,
+                    CODECS,
+                    PROTOCOL);
+        });
+    }
+
+    private Rows run(Statement<?> statement) {
+        if (statement instanceof BatchStatement batch) {
+            for (BatchableStatement<?> child : batch) {
+                run(child);
+            }
+            return Rows.EMPTY;
+        }
+        String query;
+        Object[] values;
+        if (statement instanceof BoundStatement bound) {
+            query = bound.getPreparedStatement().getQuery();
+            values = new Object[bound.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = bound.getObject(i);
+            }
+        } else if (statement instanceof SimpleStatement simple) {
+            query = simple.getQuery();
+            values = simple.getPositionalValues().toArray();
+        } else {
+            throw new IllegalArgumentException("Statement não suportado: " + statement.getClass().getName());
+        }
+
+        Query known = queries.get(query);
+        if (known == null) {
+            // DDL, ALTER e consultas a tabelas de sistema
+            return Rows.EMPTY;
+        }
+        List<Map<String, Object>> rows = known.handler().apply(values);
+        if (rows.isEmpty()) {
+            return new Rows(resultDefinitions(query), List.of(), 0, statement.getPageSize());
+        }
+        int offset = offset(statement.getPagingState());
+        return new Rows(resultDefinitions(query), rows, offset, statement.getPageSize());
+    }
+
+    private static int offset(ByteBuffer pagingState) {
+        return pagingState == null ? 0 : pagingState.getInt(pagingState.position());
+    }
+
+    private ColumnDefinitions resultDefinitions(String query) {
+        Query known = queries.get(query);
+        if (known != null && known.results() != null) {
+            List<ColumnDefinition> definitions = new ArrayList<>(known.results().size());
+            for (int i = 0; i < known.results().size(); i++) {
+                definitions.add(definition(known.results().get(i), i));
+            }
+            return DefaultColumnDefinitions.valueOf(definitions);
+        }
+        Matcher matcher = SELECT_COLUMNS.matcher(query);
+        if (!matcher.find()) {
+            return DefaultColumnDefinitions.valueOf(Collections.emptyList());
+        }
+        String[] columns = matcher.group(1).split(",");
+        List<ColumnDefinition> definitions = new ArrayList<>(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            definitions.add(definition(columns[i].trim(), i));
+        }
+        return DefaultColumnDefinitions.valueOf(definitions);
+    }
+
+    private static ColumnDefinition definition(String name, int index) {
+        DataType type = COLUMN_TYPES.getOrDefault(name, DataTypes.TEXT);
+        int code = type.getProtocolCode();
+        return new DefaultColumnDefinition(
+                new ColumnSpec("message_system", "in_memory", name, index, RawType.PRIMITIVES.get(code)),
+                AttachmentPoint.NONE);
+    }
+
+    private static Row toRow(ColumnDefinitions definitions, Map<String, Object> values) {
+        List<ByteBuffer> data = new ArrayList<>(definitions.size());
+        for (ColumnDefinition definition : definitions) {
+            Object value = values.get(definition.getName().asInternal());
+            data.add(value == null ? null : CODECS.codecFor(definition.getType()).encode(value, PROTOCOL));
+        }
+        return new DefaultRow(definitions, data, AttachmentPoint.NONE);
+    }
+
+    // Resultados
+
+    /**
+     * Linhas de uma execução a partir do offset do paging state, entregues em páginas de {@code pageSize}.
+     */
+    private record Rows(ColumnDefinitions definitions, List<Map<String, Object>> rows, int offset, int pageSize) {
+
+        static final Rows EMPTY = new Rows(DefaultColumnDefinitions.valueOf(Collections.emptyList()), List.of(), 0, 0);
+
+        int end(int from) {
+            return pageSize <= 0 ? rows.size() : Math.min(rows.size(), from + pageSize);
+        }
+
+        boolean wasApplied() {
+            return rows.isEmpty() || !Boolean.FALSE.equals(rows.get(0).get("[applied]"));
+        }
+    }
+
+    private static ByteBuffer pagingState(int offset) {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(0, offset);
+        return buffer;
+    }
+
+    private record InMemoryExecutionInfo(Statement<?> statement, ByteBuffer pagingState) implements ExecutionInfo {
+
+        @Override
+        public Statement<?> getStatement() {
+            return statement;
+        }
+
+        @Override
+        public ByteBuffer getPagingState() {
+            return pagingState;
+        }
+
+        @Override
+        public PagingState getSafePagingState() {
+            return pagingState == null ? null : new DefaultPagingState(pagingState, statement, AttachmentPoint.NONE);
+        }
+
+        @Override
+        public Node getCoordinator() {
+            return null;
+        }
+
+        @Override
+        public int getSpeculativeExecutionCount() {
+            return 0;
+        }
+
+        @Override
+        public int getSuccessfulExecutionIndex() {
+            return 0;
+        }
+
+        @Override
+        public List<Map.Entry<Node, Throwable>> getErrors() {
+            return List.of();
+        }
+
+        @Override
+        public List<String> getWarnings() {
+            return List.of();
+        }
+
+        @Override
+        public Map<String, ByteBuffer> getIncomingPayload() {
+            return Map.of();
+        }
+
+        @Override
+        public boolean isSchemaInAgreement() {
+            return true;
+        }
+
+        @Override
+        public UUID getTracingId() {
+            return null;
+        }
+
+        @Override
+        public CompletionStage<QueryTrace> getQueryTraceAsync() {
+            return CompletableFuture.failedFuture(new IllegalStateException("Tracing não suportado"));
+        }
+
+        @Override
+        public int getResponseSizeInBytes() {
+            return -1;
+        }
+
+        @Override
+        public int getCompressedResponseSizeInBytes() {
+            return -1;
+        }
+    }
+
+    /**
+     * ResultSet síncrono: a primeira página fica disponível e as seguintes são "buscadas"
+     * ao iterar, como no driver.
+     */
+    private static final class InMemoryResultSet implements ResultSet {
+
+        private final Rows rows;
+        private final Statement<?> statement;
+        private final List<ExecutionInfo> executionInfos = new ArrayList<>();
+        private int position;
+        private int fetchedUpTo;
+
+        InMemoryResultSet(Rows rows, Statement<?> statement) {
+            this.rows = rows;
+            this.statement = statement;
+            this.position = rows.offset();
+            fetchPage();
+        }
+
+        private void fetchPage() {
+            fetchedUpTo = rows.end(position);
+            ByteBuffer next = fetchedUpTo < rows.rows().size() ? pagingState(fetchedUpTo) : null;
+            executionInfos.add(new InMemoryExecutionInfo(statement, next));
+        }
+
+        @Override
+        public ColumnDefinitions getColumnDefinitions() {
+            return rows.definitions();
+        }
+
+        @Override
+        public List<ExecutionInfo> getExecutionInfos() {
+            return executionInfos;
+        }
+
+        @Override
+        public boolean isFullyFetched() {
+            return fetchedUpTo >= rows.rows().size();
+        }
+
+        @Override
+        public int getAvailableWithoutFetching() {
+            return fetchedUpTo - position;
+        }
+
+        @Override
+        public boolean wasApplied() {
+            return rows.wasApplied();
+        }
+
+        @Override
+        public Iterator<Row> iterator() {
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    if (position < fetchedUpTo) {
+                        return true;
+                    }
+                    if (isFullyFetched()) {
+                        return false;
+                    }
+                    fetchPage();
+                    return position < fetchedUpTo;
+                }
+
+                @Override
+                public Row next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return toRow(rows.definitions(), rows.rows().get(position++));
+                }
+            };
+        }
+    }
+
+    /**
+     * AsyncResultSet de página única (os caminhos assíncronos do repositório são escritas).
+     */
+    private static final class InMemoryAsyncResultSet implements AsyncResultSet {
+
+        private final Rows rows;
+        private final ExecutionInfo executionInfo;
+        private int position;
+
+        InMemoryAsyncResultSet(Rows rows, Statement<?> statement) {
+            this.rows = rows;
+            this.executionInfo = new InMemoryExecutionInfo(statement, null);
+            this.position = rows.offset();
+        }
+
+        @Override
+        public ColumnDefinitions getColumnDefinitions() {
+            return rows.definitions();
+        }
+
+        @Override
+        public ExecutionInfo getExecutionInfo() {
+            return executionInfo;
+        }
+
+        @Override
+        public int remaining() {
+            return rows.rows().size() - position;
+        }
+
+        @Override
+        public Iterable<Row> currentPage() {
+            List<Row> page = new ArrayList<>(remaining());
+            while (position < rows.rows().size()) {
+                page.add(toRow(rows.definitions(), rows.rows().get(position++)));
+            }
+            return page;
+        }
+
+        @Override
+        public boolean hasMorePages() {
+            return false;
+        }
+
+        @Override
+        public CompletionStage<AsyncResultSet> fetchNextPage() {
+            throw new IllegalStateException("Não há mais páginas");
+        }
+
+        @Override
+        public boolean wasApplied() {
+            return rows.wasApplied();
+        }
+    }
+
+    // Sessão
+
+    @Override
+    public String getName() {
+        return "in-memory";
+    }
+
+    @Override
+    public Metadata getMetadata() {
+        return EmptyMetadata.INSTANCE;
+    }
+
+    @Override
+    public boolean isSchemaMetadataEnabled() {
+        return false;
+    }
+
+    @Override
+    public CompletionStage<Metadata> setSchemaMetadataEnabled(Boolean newValue) {
+        return CompletableFuture.completedFuture(EmptyMetadata.INSTANCE);
+    }
+
+    @Override
+    public CompletionStage<Metadata> refreshSchemaAsync() {
+        return CompletableFuture.completedFuture(EmptyMetadata.INSTANCE);
+    }
+
+    @Override
+    public CompletionStage<Boolean> checkSchemaAgreementAsync() {
+        return CompletableFuture.completedFuture(true);
+    }
+
+    @Override
+    public DriverContext getContext() {
+        throw new UnsupportedOperationException("CqlSession em memória não tem DriverContext");
+    }
+
+    @Override
+    public Optional<CqlIdentifier> getKeyspace() {
+        return Optional.of(keyspace);
+    }
+
+    @Override
+    public Optional<Metrics> getMetrics() {
+        return Optional.empty();
+    }
+
+    @Override
+    public CompletionStage<Void> closeFuture() {
+        return closeFuture;
+    }
+
+    @Override
+    public CompletionStage<Void> closeAsync() {
+        closeFuture.complete(null);
+        return closeFuture;
+    }
+
+    @Override
+    public CompletionStage<Void> forceCloseAsync() {
+        return closeAsync();
+    }
+
+    public long getStoredMessageCount() {
+        long count = 0;
+        for (ConcurrentSkipListMap<Clustering, Map<String, Object>> partition : messages.values()) {
+            count += partition.size();
+        }
+        return count;
+    }
+
+    private enum EmptyMetadata implements Metadata {
+        INSTANCE;
+
+        @Override
+        public Map<UUID, Node> getNodes() {
+            return Map.of();
+        }
+
+        @Override
+        public Map<CqlIdentifier, KeyspaceMetadata> getKeyspaces() {
+            return Map.of();
+        }
+
+        @Override
+        public Optional<TokenMap> getTokenMap() {
+            return Optional.empty();
+        }
+    }
+}
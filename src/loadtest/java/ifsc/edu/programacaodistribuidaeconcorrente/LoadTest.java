@@ -0,0 +1,188 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Teste de carga ponta a ponta: sobe o broker AMQP embarcado, inicia a aplicação com o perfil
+ * "loadtest" (CqlSession em memória), gera carga em /api/send e /api/receive e imprime
+ * vazão e percentis de latência por operação HTTP e por estágio interno do pipeline.
+ */
+@Slf4j
+public class LoadTest {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    public static void main(String[] args) throws Exception {
+        int exitCode = 0;
+        try (EmbeddedAmqpBroker broker = new EmbeddedAmqpBroker(0)) {
+            broker.start();
+            // Argumento de linha de comando para ter precedência sobre o application.properties
+            String[] arguments = Arrays.copyOf(args, args.length + 1);
+            arguments[args.length] = "--spring.rabbitmq.port=" + broker.getPort();
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(Main.class)
+                    .profiles("loadtest")
+                    .initializers(new LoadTestStandIns())
+                    .run(arguments);
+            try {
+                LoadTestSettings settings = LoadTestSettings.from(context.getEnvironment());
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                MeterRegistry registry = context.getBean(MeterRegistry.class);
+                log.info("Teste de carga: {}", settings);
+
+                Map<String, double[]> before = stageTotals(registry);
+                List<LoadTestDriver.OperationResult> results =
+                        new LoadTestDriver(settings, "http://localhost:" + port).run();
+                Map<String, double[]> after = stageTotals(registry);
+
+                String report = report(settings, results, registry, before, after);
+                System.out.println(report);
+                if (!settings.reportFile().isEmpty()) {
+                    Path file = Path.of(settings.reportFile());
+                    if (file.getParent() != null) {
+                        Files.createDirectories(file.getParent());
+                    }
+                    Files.writeString(file, report);
+                    log.info("Relatório gravado em {}", file.toAbsolutePath());
+                }
+            } finally {
+                context.close();
+            }
+        } catch (Exception e) {
+            log.error("❌ Teste de carga falhou: " + e.getMessage(), e);
+            exitCode = 1;
+        }
+        System.exit(exitCode);
+    }
+
+    // Contagem e tempo total (ns) de cada estágio, para descontar o aquecimento
+    private static Map<String, double[]> stageTotals(MeterRegistry registry) {
+        Map<String, double[]> totals = new HashMap<>();
+        for (Timer timer : registry.find("messaging.stage").timers()) {
+            totals.put(stageName(timer), new double[]{timer.count(), timer.totalTime(TimeUnit.NANOSECONDS)});
+        }
+        for (Timer timer : registry.find("http.server.requests").timers()) {
+            totals.put(httpName(timer), new double[]{timer.count(), timer.totalTime(TimeUnit.NANOSECONDS)});
+        }
+        FunctionCounter consumed = registry.find("messaging.consumer.consumed").functionCounter();
+        if (consumed != null) {
+            totals.put("consumer", new double[]{consumed.count(), 0});
+        }
+        return totals;
+    }
+
+    private static String stageName(Timer timer) {
+        return timer.getId().getTag("stage") + " [" + timer.getId().getTag("outcome") + "]";
+    }
+
+    private static String httpName(Timer timer) {
+        return "http " + timer.getId().getTag("method") + " " + timer.getId().getTag("uri") +
+                " [" + timer.getId().getTag("status") + "]";
+    }
+
+    private static String report(LoadTestSettings settings,
+                                 List<LoadTestDriver.OperationResult> results,
+                                 MeterRegistry registry,
+                                 Map<String, double[]> before,
+                                 Map<String, double[]> after) {
+        double seconds = settings.durationSeconds();
+        StringWriter buffer = new StringWriter();
+        PrintWriter out = new PrintWriter(buffer);
+
+        out.println();
+        out.println("=== Teste de carga ===");
+        out.println(settings);
+        out.println();
+        out.println("Cliente (latência ponta a ponta, ms)");
+        out.printf(Locale.ROOT, "%-32s %10s %10s %8s %9s %9s %9s %9s %9s%n",
+                "operação", "requisições", "req/s", "erros", "p50", "p90", "p99", "p99.9", "max");
+        for (LoadTestDriver.OperationResult result : results) {
+            Histogram histogram = result.latencies();
+            out.printf(Locale.ROOT, "%-32s %10d %10.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    result.name(),
+                    histogram.getTotalCount(),
+                    histogram.getTotalCount() / seconds,
+                    result.errors(),
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+            if (result.errors() > 0) {
+                out.println("    status: " + result.statusCodes());
+            }
+        }
+
+        out.println();
+        out.println("Servidor (estágios medidos pela aplicação, ms; percentis da janela recente do Micrometer)");
+        out.printf(Locale.ROOT, "%-52s %10s %10s %9s %9s %9s %9s %9s%n",
+                "estágio", "contagem", "ops/s", "média", "p50", "p90", "p99", "p99.9");
+        printTimers(out, registry.find("http.server.requests").timers(), LoadTest::httpName, before, after, seconds);
+        printTimers(out, registry.find("messaging.stage").timers(), LoadTest::stageName, before, after, seconds);
+
+        double[] consumedBefore = before.getOrDefault("consumer", new double[2]);
+        double[] consumedAfter = after.getOrDefault("consumer", new double[2]);
+        out.println();
+        out.printf(Locale.ROOT, "Consumidor: %.0f mensagens confirmadas (%.1f msg/s)%n",
+                consumedAfter[0] - consumedBefore[0], (consumedAfter[0] - consumedBefore[0]) / seconds);
+        out.flush();
+        return buffer.toString();
+    }
+
+    private static void printTimers(PrintWriter out,
+                                    Iterable<Timer> timers,
+                                    java.util.function.Function<Timer, String> naming,
+                                    Map<String, double[]> before,
+                                    Map<String, double[]> after,
+                                    double seconds) {
+        for (Timer timer : timers) {
+            String name = naming.apply(timer);
+            double[] start = before.getOrDefault(name, new double[2]);
+            double[] end = after.getOrDefault(name, new double[2]);
+            double count = end[0] - start[0];
+            if (count <= 0) {
+                continue;
+            }
+            double meanMs = (end[1] - start[1]) / count / 1_000_000.0;
+            double[] percentiles = percentiles(timer.takeSnapshot());
+            out.printf(Locale.ROOT, "%-52s %10.0f %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    name, count, count / seconds, meanMs,
+                    percentiles[0], percentiles[1], percentiles[2], percentiles[3]);
+        }
+    }
+
+    private static double[] percentiles(HistogramSnapshot snapshot) {
+        double[] values = new double[PERCENTILES.length];
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                if (Math.abs(value.percentile() - PERCENTILES[i]) < 1e-9) {
+                    values[i] = value.value(TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        return values;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
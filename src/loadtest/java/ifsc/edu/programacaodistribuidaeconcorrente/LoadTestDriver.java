@@ -0,0 +1,190 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gera carga HTTP contra /api/send e /api/receive com N clientes concorrentes (um por virtual thread),
+ * em laço fechado: cada cliente só envia a próxima requisição depois da resposta da anterior.
+ * Os tamanhos de mensagem seguem um perfil com pesos, e as latências vão para histogramas HDR por operação.
+ */
+@Slf4j
+public class LoadTestDriver {
+
+    static final String OP_SEND = "POST /api/send";
+    static final String OP_RECEIVE = "GET /api/receive";
+
+    /**
+     * Resultado de uma operação na janela medida (após o aquecimento).
+     */
+    public record OperationResult(String name, Histogram latencies, long errors, Map<Integer, Long> statusCodes) {
+    }
+
+    private final LoadTestSettings settings;
+    private final String baseUrl;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String[] payloads;
+    private final int[] payloadWeights;
+
+    private volatile boolean measuring;
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, LongAdder>> statusCodes = new ConcurrentHashMap<>();
+
+    public LoadTestDriver(LoadTestSettings settings, String baseUrl) {
+        this.settings = settings;
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        List<LoadTestSettings.SizeWeight> profile = settings.messageSizes();
+        payloads = new String[profile.size()];
+        payloadWeights = new int[profile.size()];
+        int total = 0;
+        for (int i = 0; i < profile.size(); i++) {
+            payloads[i] = text(profile.get(i).size(), i);
+            total += profile.get(i).weight();
+            payloadWeights[i] = total;
+        }
+    }
+
+    /**
+     * Executa aquecimento + medição e retorna os resultados da janela medida.
+     */
+    public List<OperationResult> run() throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(settings.warmupSeconds());
+        long deadline = measureFrom + TimeUnit.SECONDS.toNanos(settings.durationSeconds());
+
+        List<Thread> clients = new ArrayList<>(settings.concurrency());
+        for (int i = 0; i < settings.concurrency(); i++) {
+            clients.add(Thread.ofVirtual().name("loadtest-client-" + i).start(() -> clientLoop(deadline)));
+        }
+
+        long now = System.nanoTime();
+        if (measureFrom > now) {
+            TimeUnit.NANOSECONDS.sleep(measureFrom - now);
+        }
+        // Fim do aquecimento: só as requisições iniciadas a partir daqui entram no relatório
+        measuring = true;
+        log.info("Aquecimento concluído, medindo por {}s", settings.durationSeconds());
+
+        for (Thread client : clients) {
+            client.join();
+        }
+
+        List<OperationResult> results = new ArrayList<>();
+        for (String operation : List.of(OP_SEND, OP_RECEIVE)) {
+            Histogram histogram = latencies.get(operation);
+            if (histogram == null) {
+                continue;
+            }
+            Map<Integer, Long> codes = new LinkedHashMap<>();
+            statusCodes.getOrDefault(operation, Map.of()).forEach((code, count) -> codes.put(code, count.sum()));
+            LongAdder failed = errors.get(operation);
+            results.add(new OperationResult(operation, histogram, failed == null ? 0 : failed.sum(), codes));
+        }
+        return results;
+    }
+
+    private void clientLoop(long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            boolean receive = random.nextDouble() < settings.receiveRatio();
+            HttpRequest request = receive ? receiveRequest() : sendRequest(random);
+            String operation = receive ? OP_RECEIVE : OP_SEND;
+            boolean recorded = measuring;
+            long begin = System.nanoTime();
+            int status;
+            try {
+                status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                status = -1;
+            }
+            long elapsed = System.nanoTime() - begin;
+            if (recorded) {
+                record(operation, elapsed, status);
+            }
+        }
+    }
+
+    private void record(String operation, long elapsedNanos, int status) {
+        latencies.computeIfAbsent(operation, key -> new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3))
+                .recordValue(Math.min(elapsedNanos, TimeUnit.MINUTES.toNanos(1)));
+        statusCodes.computeIfAbsent(operation, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(status, key -> new LongAdder())
+                .increment();
+        if (status < 200 || status >= 300) {
+            errors.computeIfAbsent(operation, key -> new LongAdder()).increment();
+        }
+    }
+
+    private HttpRequest sendRequest(ThreadLocalRandom random) {
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(Map.of(
+                    "sender", "loadtest-" + random.nextInt(settings.senders()),
+                    "message", pickPayload(random)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/send"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest receiveRequest() {
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/receive?limit=" + settings.receiveLimit()))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    // Texto com palavras variadas, para que a compressão por limiar tenha efeito realista
+    private static String text(int size, long seed) {
+        String[] words = {"mensagem", "servidor", "fila", "cassandra", "rabbitmq", "cliente", "envio",
+                "recebida", "concorrência", "distribuída", "carga", "lote", "status", "teste"};
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder(size + 16);
+        while (builder.length() < size) {
+            builder.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        builder.setLength(size);
+        return builder.toString();
+    }
+
+    private String pickPayload(ThreadLocalRandom random) {
+        int roll = random.nextInt(payloadWeights[payloadWeights.length - 1]);
+        for (int i = 0; i < payloadWeights.length; i++) {
+            if (roll < payloadWeights[i]) {
+                return payloads[i];
+            }
+        }
+        return payloads[payloads.length - 1];
+    }
+}
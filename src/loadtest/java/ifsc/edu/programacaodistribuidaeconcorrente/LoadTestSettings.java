@@ -0,0 +1,60 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parâmetros do teste de carga (loadtest.* em application-loadtest.properties,
+ * sobrescrevíveis na linha de comando como --loadtest.concurrency=64).
+ */
+public record LoadTestSettings(int concurrency,
+                               int warmupSeconds,
+                               int durationSeconds,
+                               int senders,
+                               double receiveRatio,
+                               int receiveLimit,
+                               List<SizeWeight> messageSizes,
+                               String reportFile) {
+
+    /**
+     * Tamanho do conteúdo em bytes e peso relativo no perfil.
+     */
+    public record SizeWeight(int size, int weight) {
+    }
+
+    public static LoadTestSettings from(Environment environment) {
+        return new LoadTestSettings(
+                environment.getProperty("loadtest.concurrency", Integer.class, 32),
+                environment.getProperty("loadtest.warmup-seconds", Integer.class, 5),
+                environment.getProperty("loadtest.duration-seconds", Integer.class, 30),
+                environment.getProperty("loadtest.senders", Integer.class, 100),
+                environment.getProperty("loadtest.receive-ratio", Double.class, 0.1),
+                environment.getProperty("loadtest.receive-limit", Integer.class, 100),
+                parseSizes(environment.getProperty("loadtest.message-sizes", "256:100")),
+                environment.getProperty("loadtest.report-file", ""));
+    }
+
+    // Formato: tamanho:peso separados por vírgula, ex. 64:70,1024:25,16384:5
+    static List<SizeWeight> parseSizes(String profile) {
+        List<SizeWeight> sizes = new ArrayList<>();
+        for (String entry : profile.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int size = Integer.parseInt(parts[0].trim());
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (size <= 0 || weight <= 0) {
+                throw new IllegalArgumentException("Perfil de tamanhos inválido: " + entry);
+            }
+            sizes.add(new SizeWeight(size, weight));
+        }
+        return sizes;
+    }
+
+    @Override
+    public String toString() {
+        return "concorrência " + concurrency + ", aquecimento " + warmupSeconds + "s, duração " + durationSeconds +
+                "s, remetentes " + senders + ", receive " + Math.round(receiveRatio * 100) + "% (limit " + receiveLimit +
+                "), tamanhos " + messageSizes;
+    }
+}
@@ -0,0 +1,69 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+
+/**
+ * Troca as dependências externas da aplicação pelas substitutas do teste de carga antes do refresh:
+ * o bean "session" passa a ser um {@link InMemoryCqlSession} e o {@link DatabaseConfig} não abre
+ * conexões com o cluster. O RabbitMQ é substituído apenas por configuração (spring.rabbitmq.port
+ * apontando para o {@link EmbeddedAmqpBroker}).
+ */
+@Slf4j
+public class LoadTestStandIns implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    @Override
+    public void initialize(ConfigurableApplicationContext context) {
+        // Registrado como bean (e não via addBeanFactoryPostProcessor) para rodar depois do
+        // processamento das classes de configuração, quando o bean "session" original já existe
+        ((BeanDefinitionRegistry) context.getBeanFactory())
+                .registerBeanDefinition("loadTestStandIns", new RootBeanDefinition(StandInRegistrar.class));
+    }
+
+    static class StandInRegistrar implements BeanDefinitionRegistryPostProcessor, EnvironmentAware {
+
+        private Environment environment;
+
+        @Override
+        public void setEnvironment(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+            registry.removeBeanDefinition("session");
+            RootBeanDefinition session = new RootBeanDefinition(CqlSession.class, () -> new InMemoryCqlSession(
+                    environment.getProperty("cassandra.keyspace", "message_system"),
+                    environment.getProperty("loadtest.cassandra.latency-micros", Long.class, 0L)));
+            session.setDestroyMethodName("close");
+            registry.registerBeanDefinition("session", session);
+
+            registry.removeBeanDefinition("databaseConfig");
+            registry.registerBeanDefinition("databaseConfig", new RootBeanDefinition(StandInDatabaseConfig.class));
+        }
+
+        @Override
+        public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        }
+    }
+
+    /**
+     * DatabaseConfig sem conexão própria: a sessão usada pelo repositório é o bean em memória.
+     */
+    static class StandInDatabaseConfig extends DatabaseConfig {
+
+        @Override
+        public void initCassandra() {
+            log.info("✅ Cassandra substituído por CqlSession em memória");
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controle de admissão na frente do envio. Recusa a requisição, sem enfileirar, quando:
+ * o sistema está sobrecarregado (fila no broker ou requisições em voo no Cassandra acima do limite),
+ * o limite global de requisições concorrentes foi atingido, ou o remetente passou da sua taxa.
+ *
+ * A taxa por remetente é um token bucket implementado como GCRA: o estado de cada remetente é um
+ * único long (o instante teórico da próxima chegada) atualizado por CAS, sem locks. Os buckets ficam
+ * em um ConcurrentHashMap; um bucket ocioso equivale a um bucket novo e é removido na varredura periódica.
+ */
+@Slf4j
+@Component
+public class AdmissionControl {
+
+    public static final String REASON_OVERLOADED = "overloaded";
+    public static final String REASON_CONCURRENCY = "concurrency_limit";
+    public static final String REASON_RATE_LIMITED = "rate_limited";
+
+    /**
+     * Permissão de uma requisição admitida; deve ser fechada ao fim da requisição.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final Permit NO_PERMIT = () -> {
+    };
+
+    private final BrokerQueueMonitor brokerQueueMonitor;
+    private final MessagingMetrics metrics;
+    private final MessagingThreads messagingThreads;
+
+    @Getter
+    @Value("${admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${admission.max-concurrent-requests:256}")
+    private int maxConcurrentRequests;
+
+    @Value("${admission.sender.rate-per-second:50}")
+    private double senderRatePerSecond;
+
+    @Value("${admission.sender.burst:100}")
+    private int senderBurst;
+
+    @Value("${admission.sender.sweep-interval-ms:10000}")
+    private long sweepIntervalMs;
+
+    @Value("${admission.shed.broker-queue-depth:100000}")
+    private long shedBrokerQueueDepth;
+
+    @Value("${admission.shed.cassandra-in-flight:512}")
+    private int shedCassandraInFlight;
+
+    @Value("${admission.retry-after-seconds:1}")
+    private long retryAfterSeconds;
+
+    private Semaphore concurrency;
+    private long emissionNanos;
+    private long toleranceNanos;
+    private final ConcurrentHashMap<String, SenderBucket> buckets = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder concurrencyRejected = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    // Instante teórico de chegada (GCRA): cada requisição empurra o valor em 1/taxa
+    private static final class SenderBucket extends AtomicLong {
+
+        private static final long serialVersionUID = 1L;
+
+        SenderBucket() {
+            super(Long.MIN_VALUE);
+        }
+
+        /**
+         * Consome as permissões e retorna 0, ou retorna quantos nanos faltam para haver permissões suficientes.
+         */
+        long tryAcquire(long now, long emissionNanos, long toleranceNanos, int permits) {
+            while (true) {
+                long arrival = get();
+                long next = Math.max(arrival, now) + emissionNanos * permits;
+                long wait = next - now - toleranceNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (compareAndSet(arrival, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean isIdle(long now) {
+            return get() <= now;
+        }
+    }
+
+    @Autowired
+    public AdmissionControl(BrokerQueueMonitor brokerQueueMonitor, MessagingMetrics metrics,
+                            MessagingThreads messagingThreads) {
+        this.brokerQueueMonitor = brokerQueueMonitor;
+        this.metrics = metrics;
+        this.messagingThreads = messagingThreads;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        if (!enabled) {
+            log.info("Controle de admissão desabilitado");
+            return;
+        }
+        concurrency = new Semaphore(maxConcurrentRequests);
+        emissionNanos = (long) (TimeUnit.SECONDS.toNanos(1) / senderRatePerSecond);
+        toleranceNanos = emissionNanos * senderBurst;
+        sweeper = messagingThreads.scheduledExecutor("admission-sweeper");
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Controle de admissão habilitado (concorrência: " + maxConcurrentRequests +
+                ", taxa por remetente: " + senderRatePerSecond + "/s, rajada: " + senderBurst +
+                ", descarte: fila > " + shedBrokerQueueDepth + " ou Cassandra em voo > " + shedCassandraInFlight + ")");
+    }
+
+    /**
+     * Admite um envio do remetente ou lança {@link AdmissionRejectedException}.
+     */
+    public Permit admit(String sender) {
+        if (!enabled) {
+            return NO_PERMIT;
+        }
+        Permit permit = admitRequest();
+        try {
+            acquireRate(sender);
+        } catch (AdmissionRejectedException e) {
+            permit.close();
+            throw e;
+        }
+        return permit;
+    }
+
+    /**
+     * Admite uma requisição sem consumir a taxa de nenhum remetente (lotes, em que cada
+     * item é verificado com {@link #tryAcquireRate(String)}).
+     */
+    public Permit admitRequest() {
+        if (!enabled) {
+            return NO_PERMIT;
+        }
+        checkOverload();
+        if (!concurrency.tryAcquire()) {
+            concurrencyRejected.increment();
+            throw new AdmissionRejectedException(REASON_CONCURRENCY,
+                    "Limite de " + maxConcurrentRequests + " requisições simultâneas atingido", retryAfterSeconds);
+        }
+        admitted.increment();
+        return concurrency::release;
+    }
+
+    /**
+     * Consome uma permissão da taxa do remetente; false se ele está acima da taxa.
+     */
+    public boolean tryAcquireRate(String sender) {
+        return !enabled || rateWait(sender) == 0;
+    }
+
+    private void acquireRate(String sender) {
+        long wait = rateWait(sender);
+        if (wait > 0) {
+            throw new AdmissionRejectedException(REASON_RATE_LIMITED,
+                    "Remetente " + sender + " acima de " + senderRatePerSecond + " mensagens/s",
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1)));
+        }
+    }
+
+    // 0 se a permissão foi consumida, senão os nanos até o remetente voltar a ter permissão
+    private long rateWait(String sender) {
+        SenderBucket bucket = buckets.get(sender);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(sender, key -> new SenderBucket());
+        }
+        long wait = bucket.tryAcquire(System.nanoTime(), emissionNanos, toleranceNanos, 1);
+        if (wait > 0) {
+            rateLimited.increment();
+        }
+        return wait;
+    }
+
+    private void checkOverload() {
+        long brokerDepth = brokerQueueMonitor.getMessageCount();
+        if (brokerDepth > shedBrokerQueueDepth) {
+            shed.increment();
+            throw new AdmissionRejectedException(REASON_OVERLOADED,
+                    "Fila no broker com " + brokerDepth + " mensagens", retryAfterSeconds);
+        }
+        int cassandraInFlight = metrics.getCassandraInFlight();
+        if (cassandraInFlight > shedCassandraInFlight) {
+            shed.increment();
+            throw new AdmissionRejectedException(REASON_OVERLOADED,
+                    "Cassandra com " + cassandraInFlight + " requisições em voo", retryAfterSeconds);
+        }
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> bucket.isIdle(now));
+        log.debug("Buckets de remetentes: {} -> {}", before, buckets.size());
+    }
+
+    public int getTrackedSenders() {
+        return buckets.size();
+    }
+
+    public int getActiveRequests() {
+        return concurrency == null ? 0 : maxConcurrentRequests - concurrency.availablePermits();
+    }
+
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    public long getConcurrencyRejectedCount() {
+        return concurrencyRejected.sum();
+    }
+
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.Getter;
+
+/**
+ * Requisição recusada pelo {@link AdmissionControl}: remetente acima da taxa, limite global de
+ * concorrência atingido ou sistema sobrecarregado. O cliente deve tentar de novo após retryAfterSeconds.
+ */
+@Getter
+public class AdmissionRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String reason, String message, long retryAfterSeconds) {
+        super(message);
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
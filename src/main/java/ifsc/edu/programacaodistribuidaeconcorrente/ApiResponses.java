@@ -0,0 +1,52 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.List;
+
+/**
+ * Respostas de sucesso dos endpoints de envio e leitura, com os mesmos campos dos Maps de antes.
+ * As mensagens usam {@link MessageJsonSerializer}.
+ */
+public final class ApiResponses {
+
+    private ApiResponses() {
+    }
+
+    @JsonPropertyOrder({"status", "message", "message_id"})
+    public record Sent(String status, String message, @JsonProperty("message_id") String messageId) {
+    }
+
+    public record MessageList(String status, List<Message> messages, int count) {
+
+        public MessageList(List<Message> messages) {
+            this("ok", messages, messages.size());
+        }
+    }
+
+    /**
+     * Resposta de /api/receive/recent. Com cached=false o cache ainda não tem mensagens suficientes
+     * (por exemplo, logo depois de reiniciar) e a lista vem vazia.
+     */
+    @JsonPropertyOrder({"status", "messages", "count", "cached"})
+    public record RecentMessages(String status, List<Message> messages, int count, boolean cached) {
+
+        public static RecentMessages hit(List<Message> messages) {
+            return new RecentMessages("ok", messages, messages.size(), true);
+        }
+
+        public static RecentMessages miss() {
+            return new RecentMessages("miss", List.of(), 0, false);
+        }
+    }
+
+    @JsonPropertyOrder({"status", "messages", "count", "next_cursor"})
+    public record MessagePage(String status, List<Message> messages, int count,
+                              @JsonProperty("next_cursor") String nextCursor) {
+
+        public MessagePage(MessageRepository.MessagePage page) {
+            this("ok", page.messages(), page.messages().size(), page.nextCursor());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Codificação binária compacta de {@link Message}.
+ * <pre>
+ * versão (1 byte) | id (16 bytes) | timestamp (8 bytes) | sender | content | status
+ * </pre>
+ * Cada texto é gravado como comprimento em bytes (int, -1 para null) seguido do UTF-8.
+ * A codificação calcula o tamanho exato antes e escreve direto no array final,
+ * sem buffers ou arrays intermediários.
+ */
+public final class BinaryMessageCodec {
+
+    static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 1 + 16 + 8;
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private BinaryMessageCodec() {
+    }
+
+    public static byte[] encode(Message message) {
+        String sender = message.getSender();
+        String content = message.getContent();
+        String status = message.getStatus();
+
+        int size = HEADER_SIZE + 12 + utf8Length(sender) + utf8Length(content) + utf8Length(status);
+        byte[] bytes = new byte[size];
+
+        bytes[0] = VERSION;
+        UUID id = message.getId();
+        LONG.set(bytes, 1, id.getMostSignificantBits());
+        LONG.set(bytes, 9, id.getLeastSignificantBits());
+        LONG.set(bytes, 17, message.getTimestamp());
+
+        int offset = HEADER_SIZE;
+        offset = writeString(bytes, offset, sender);
+        offset = writeString(bytes, offset, content);
+        writeString(bytes, offset, status);
+        return bytes;
+    }
+
+    public static Message decode(byte[] bytes) {
+        if (bytes.length < HEADER_SIZE + 12 || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Payload binário inválido ou versão desconhecida");
+        }
+        UUID id = new UUID((long) LONG.get(bytes, 1), (long) LONG.get(bytes, 9));
+        long timestamp = (long) LONG.get(bytes, 17);
+
+        int offset = HEADER_SIZE;
+        int senderLength = (int) INT.get(bytes, offset);
+        String sender = readString(bytes, offset + 4, senderLength);
+        offset += 4 + Math.max(senderLength, 0);
+
+        int contentLength = (int) INT.get(bytes, offset);
+        String content = readString(bytes, offset + 4, contentLength);
+        offset += 4 + Math.max(contentLength, 0);
+
+        int statusLength = (int) INT.get(bytes, offset);
+        String status = readString(bytes, offset + 4, statusLength);
+
+        return new Message(id, sender, content, timestamp, status);
+    }
+
+    private static String readString(byte[] bytes, int offset, int length) {
+        return length < 0 ? null : new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static int writeString(byte[] bytes, int offset, String value) {
+        if (value == null) {
+            INT.set(bytes, offset, -1);
+            return offset + 4;
+        }
+        int start = offset + 4;
+        int end = encodeUtf8(value, bytes, start);
+        INT.set(bytes, offset, end - start);
+        return end;
+    }
+
+    // Tamanho em bytes do texto em UTF-8; surrogates sem par contam como '?'
+    static int utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        int size = value.length();
+        for (int i = 0; i < size; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int encodeUtf8(String value, byte[] bytes, int offset) {
+        int size = value.length();
+        for (int i = 0; i < size; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[offset++] = (byte) (0xC0 | (c >> 6));
+                bytes[offset++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[offset++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[offset++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[offset++] = (byte) '?';
+            } else {
+                bytes[offset++] = (byte) (0xE0 | (c >> 12));
+                bytes[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return offset;
+    }
+}
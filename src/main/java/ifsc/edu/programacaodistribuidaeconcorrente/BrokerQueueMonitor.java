@@ -0,0 +1,85 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Amostra periodicamente a profundidade da fila no broker (passive declare),
+ * somando as filas de todos os shards.
+ * Leitores (métricas, controle de admissão) usam o último valor, sem ida ao broker.
+ */
+@Slf4j
+@Component
+public class BrokerQueueMonitor {
+
+    private final RabbitAdmin rabbitAdmin;
+    private final QueueSharding queueSharding;
+    private final long sampleIntervalMs;
+    private final MessagingThreads messagingThreads;
+
+    private volatile long messageCount = -1;
+    private volatile long consumerCount = -1;
+    private ScheduledExecutorService sampler;
+
+    public BrokerQueueMonitor(RabbitAdmin rabbitAdmin,
+                              QueueSharding queueSharding,
+                              @Value("${metrics.broker.sample-interval-ms:5000}") long sampleIntervalMs,
+                              MessagingThreads messagingThreads) {
+        this.rabbitAdmin = rabbitAdmin;
+        this.queueSharding = queueSharding;
+        this.sampleIntervalMs = sampleIntervalMs;
+        this.messagingThreads = messagingThreads;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        sampler = messagingThreads.scheduledExecutor("broker-queue-monitor");
+        sampler.scheduleWithFixedDelay(this::sample, sampleIntervalMs, sampleIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        long messages = 0;
+        long consumers = 0;
+        for (String queueName : queueSharding.queueNames()) {
+            try {
+                QueueInformation info = rabbitAdmin.getQueueInfo(queueName);
+                if (info == null) {
+                    return;
+                }
+                messages += info.getMessageCount();
+                consumers += info.getConsumerCount();
+            } catch (Exception e) {
+                log.debug("Falha ao consultar profundidade da fila {}: {}", queueName, e.getMessage());
+                return;
+            }
+        }
+        messageCount = messages;
+        consumerCount = consumers;
+    }
+
+    /**
+     * Último número de mensagens prontas na fila, ou -1 se ainda não amostrado.
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getConsumerCount() {
+        return consumerCount;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom sem locks sobre um AtomicLongArray: inserções concorrentes ligam bits com CAS
+ * e consultas só leem. Responde "com certeza nunca vi" ou "talvez já vi", com a taxa de falso
+ * positivo configurada enquanto o número de chaves não passar do esperado.
+ */
+public class ConcurrentBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    public ConcurrentBloomFilter(long expectedKeys, double falsePositiveRate) {
+        long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * Math.log(2)));
+    }
+
+    public void put(CharSequence key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    public boolean mightContain(CharSequence key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    // FNV-1a de 64 bits sobre os chars, finalizado com o mix do MurmurHash3
+    private static long hash(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -6,6 +6,7 @@ import com.datastax.oss.driver.api.core.CqlSessionBuilder;
 import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
 import com.datastax.oss.driver.api.core.config.ProgrammaticDriverConfigLoaderBuilder;
 import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.Getter;
@@ -16,8 +17,9 @@ import org.springframework.stereotype.Component;
 
 import java.net.InetSocketAddress;
 import java.time.Duration;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Slf4j
 @Component
 public class DatabaseConfig {
@@ -50,127 +52,202 @@ public class DatabaseConfig {
     @Value("${cassandra.pool.local.core-connections}")
     private int localCoreConnections;
 
-    @Value("${cassandra.pool.local.max-connections}")
-    private int localMaxConnections;
+    @Value("${cassandra.pool.remote.core-connections:1}")
+    private int remoteCoreConnections;
 
-    @Getter
-    private CqlSession session;
+    @Value("${cassandra.pool.max-requests-per-connection:1024}")
+    private int maxRequestsPerConnection;
 
-    @Bean
-    public CqlSession session() {
-        try {
-            return CqlSession.builder()
-                    .withKeyspace("message_system")
-                    .addContactPoint(new InetSocketAddress("127.0.0.1", 9042))
-                    .withLocalDatacenter("datacenter1")
-                    .build();
-        } catch (Exception e) {
-            log.error("Erro ao conectar ao Cassandra", e);
-            throw new RuntimeException("Falha na conexão com Cassandra", e);
-        }
-    }
+    @Value("${cassandra.load-balancing.slow-replica-avoidance:true}")
+    private boolean slowReplicaAvoidance;
 
-    @PostConstruct
-    public void postConstruct() {
-        log.info("DatabaseConfig inicializado pelo Spring");
-        log.info("Contact Points: " + contactPoints);
-        log.info("Keyspace: " + keyspace);
-        log.info("Datacenter: " + datacenter);
-    }
+    @Value("${cassandra.profile.read.consistency:LOCAL_ONE}")
+    private String readConsistency;
 
-    public void initCassandra() {
-        try {
-            log.info("=== Iniciando conexão com Cassandra ===");
-            log.info("Contact Points: " + contactPoints);
-            log.info("Port: " + port);
-            log.info("Keyspace: " + keyspace);
-            log.info("Datacenter: " + datacenter);
-
-            // Preparar lista de contact points
-            List<String> hosts = Arrays.asList(contactPoints.split(","));
-
-            // Criar configuração programática
-            ProgrammaticDriverConfigLoaderBuilder configLoaderBuilder = DriverConfigLoader.programmaticBuilder()
-                    .withDuration(DefaultDriverOption.REQUEST_TIMEOUT, Duration.ofMillis(requestTimeout))
-                    .withDuration(DefaultDriverOption.CONNECTION_CONNECT_TIMEOUT, Duration.ofMillis(connectionTimeout))
-                    .withInt(DefaultDriverOption.CONNECTION_POOL_LOCAL_SIZE, localCoreConnections)
-                    .withInt(DefaultDriverOption.CONNECTION_MAX_REQUESTS, localMaxConnections);
-
-            DriverConfigLoader configLoader = configLoaderBuilder.build();
-
-            // Primeiro, conectar sem keyspace para criar o keyspace se necessário
-            CqlSessionBuilder builderWithoutKeyspace = CqlSession.builder();
-
-            // Adicionar contact points
-            for (String host : hosts) {
-                builderWithoutKeyspace.addContactPoint(new InetSocketAddress(host.trim(), port));
-            }
+    @Value("${cassandra.profile.read.timeout:${cassandra.request.timeout}}")
+    private int readTimeout;
 
-            // Configurar datacenter
-            builderWithoutKeyspace.withLocalDatacenter(datacenter);
+    @Value("${cassandra.profile.write.consistency:LOCAL_QUORUM}")
+    private String writeConsistency;
 
-            // Aplicar configuração personalizada
-            builderWithoutKeyspace.withConfigLoader(configLoader);
+    @Value("${cassandra.profile.write.serial-consistency:LOCAL_SERIAL}")
+    private String writeSerialConsistency;
 
-            // Configurar autenticação se fornecida
-            if (username != null && password != null && !username.isEmpty() && !password.isEmpty()) {
-                log.info("Configurando autenticação para usuário: " + username);
-                builderWithoutKeyspace.withAuthCredentials(username, password);
-            }
+    @Value("${cassandra.profile.write.timeout:${cassandra.request.timeout}}")
+    private int writeTimeout;
 
-            // Criar sessão temporária sem keyspace
-            CqlSession tempSession = builderWithoutKeyspace.build();
+    @Value("${cassandra.speculative-execution.enabled:false}")
+    private boolean speculativeExecutionEnabled;
 
-            // Criar keyspace se não existir
-            log.info("Verificando se keyspace existe: " + keyspace);
-            String createKeyspaceQuery = String.format(
-                    "CREATE KEYSPACE IF NOT EXISTS %s WITH REPLICATION = " +
-                            "{'class': 'SimpleStrategy', 'replication_factor': 1}",
-                    keyspace
-            );
-            tempSession.execute(createKeyspaceQuery);
-            log.info("✅ Keyspace verificado/criado: " + keyspace);
+    @Value("${cassandra.speculative-execution.max-executions:2}")
+    private int speculativeMaxExecutions;
 
-            // Fechar sessão temporária
-            tempSession.close();
+    @Value("${cassandra.speculative-execution.delay-ms:50}")
+    private int speculativeDelay;
 
-            // Agora conectar com o keyspace
-            CqlSessionBuilder builder = CqlSession.builder();
+    @Value("${cassandra.throttler.type:none}")
+    private String throttlerType;
 
-            // Adicionar contact points
-            for (String host : hosts) {
-                builder.addContactPoint(new InetSocketAddress(host.trim(), port));
-            }
+    @Value("${cassandra.throttler.max-concurrent-requests:1024}")
+    private int throttlerMaxConcurrentRequests;
+
+    @Value("${cassandra.throttler.max-requests-per-second:10000}")
+    private int throttlerMaxRequestsPerSecond;
 
-            // Configurar datacenter
-            builder.withLocalDatacenter(datacenter);
+    @Value("${cassandra.throttler.max-queue-size:10000}")
+    private int throttlerMaxQueueSize;
 
-            // Configurar keyspace
-            builder.withKeyspace(keyspace);
+    @Value("${cassandra.throttler.drain-interval-ms:10}")
+    private int throttlerDrainInterval;
 
-            // Aplicar configuração personalizada
-            builder.withConfigLoader(configLoader);
+    @Getter
+    private CqlSession session;
 
-            // Configurar autenticação se fornecida
+    @Value("${cassandra.metrics.enabled:true}")
+    private boolean metricsEnabled;
+
+    /**
+     * Única sessão da aplicação, configurada pelas propriedades cassandra.*. Conecta sem keyspace,
+     * cria o keyspace só se ele não aparece nos metadados carregados na conexão e passa a usá-lo
+     * com USE, sem abrir uma sessão temporária.
+     */
+    @Bean
+    public CqlSession session(MeterRegistry meterRegistry) {
+        long start = System.nanoTime();
+        try {
+            CqlSessionBuilder builder = CqlSession.builder()
+                    .withLocalDatacenter(datacenter)
+                    .withConfigLoader(configLoader());
+            for (String host : contactPoints.split(",")) {
+                builder.addContactPoint(new InetSocketAddress(host.trim(), port));
+            }
             if (username != null && password != null && !username.isEmpty() && !password.isEmpty()) {
+                log.info("Configurando autenticação para usuário: " + username);
                 builder.withAuthCredentials(username, password);
             }
+            if (metricsEnabled) {
+                // Métricas do driver (requisições, timeouts, pool por nó) publicadas no mesmo registry do Micrometer
+                builder.withMetricRegistry(meterRegistry);
+            }
+            CqlSession cqlSession = builder.build();
+            useKeyspace(cqlSession);
+            session = cqlSession;
+            log.info("✅ Sessão Cassandra aberta em {} ms (keyspace {})",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), keyspace);
+            return cqlSession;
+        } catch (Exception e) {
+            log.error("Erro ao conectar ao Cassandra", e);
+            throw new RuntimeException("Falha na conexão com Cassandra", e);
+        }
+    }
+
+    private void useKeyspace(CqlSession cqlSession) {
+        if (cqlSession.getMetadata().getKeyspace(keyspace).isEmpty()) {
+            log.info("Criando keyspace: " + keyspace);
+            cqlSession.execute(String.format(
+                    "CREATE KEYSPACE IF NOT EXISTS %s WITH REPLICATION = " +
+                            "{'class': 'SimpleStrategy', 'replication_factor': 1}",
+                    keyspace));
+        }
+        // Ainda sem requisições concorrentes: o driver troca o keyspace de todas as conexões do pool
+        cqlSession.execute("USE " + keyspace);
+    }
+
+    /**
+     * Configuração do driver montada só a partir das propriedades cassandra.*. O balanceamento padrão
+     * do driver 4 já é token-aware para statements preparados (a chave de partição vem do bind);
+     * os perfis "read" e "write" separam consistência e timeout por tipo de operação
+     * (ver {@link PreparedStatementRegistry}).
+     */
+    private DriverConfigLoader configLoader() {
+        ProgrammaticDriverConfigLoaderBuilder loader = DriverConfigLoader.programmaticBuilder()
+                .withDuration(DefaultDriverOption.REQUEST_TIMEOUT, Duration.ofMillis(requestTimeout))
+                .withDuration(DefaultDriverOption.CONNECTION_CONNECT_TIMEOUT, Duration.ofMillis(connectionTimeout))
+                .withInt(DefaultDriverOption.CONNECTION_POOL_LOCAL_SIZE, localCoreConnections)
+                .withInt(DefaultDriverOption.CONNECTION_POOL_REMOTE_SIZE, remoteCoreConnections)
+                .withInt(DefaultDriverOption.CONNECTION_MAX_REQUESTS, maxRequestsPerConnection)
+                .withString(DefaultDriverOption.LOAD_BALANCING_POLICY_CLASS, "DefaultLoadBalancingPolicy")
+                // Evita réplicas lentas ou com muitas requisições em voo ao escolher o coordenador
+                .withBoolean(DefaultDriverOption.LOAD_BALANCING_POLICY_SLOW_AVOIDANCE, slowReplicaAvoidance);
+        throttler(loader);
+
+        loader.startProfile(PreparedStatementRegistry.READ_PROFILE)
+                .withString(DefaultDriverOption.REQUEST_CONSISTENCY, readConsistency)
+                .withDuration(DefaultDriverOption.REQUEST_TIMEOUT, Duration.ofMillis(readTimeout));
+        if (speculativeExecutionEnabled) {
+            // Só vale para statements idempotentes: as leituras do registry são marcadas como idempotentes
+            loader.withString(DefaultDriverOption.SPECULATIVE_EXECUTION_POLICY_CLASS, "ConstantSpeculativeExecutionPolicy")
+                    .withInt(DefaultDriverOption.SPECULATIVE_EXECUTION_MAX, speculativeMaxExecutions)
+                    .withDuration(DefaultDriverOption.SPECULATIVE_EXECUTION_DELAY, Duration.ofMillis(speculativeDelay));
+        }
+        loader.startProfile(PreparedStatementRegistry.WRITE_PROFILE)
+                .withString(DefaultDriverOption.REQUEST_CONSISTENCY, writeConsistency)
+                .withString(DefaultDriverOption.REQUEST_SERIAL_CONSISTENCY, writeSerialConsistency)
+                .withDuration(DefaultDriverOption.REQUEST_TIMEOUT, Duration.ofMillis(writeTimeout))
+                .endProfile();
+
+        if (metricsEnabled) {
+            // Nomes de DefaultSessionMetric e DefaultNodeMetric: um nome desconhecido só gera um warning
+            // do driver e a métrica não é publicada
+            loader.withString(DefaultDriverOption.METRICS_FACTORY_CLASS, "MicrometerMetricsFactory")
+                    .withStringList(DefaultDriverOption.METRICS_SESSION_ENABLED, List.of(
+                            "connected-nodes",
+                            "cql-requests",
+                            "cql-client-timeouts",
+                            "throttling.delay",
+                            "throttling.queue-size",
+                            "throttling.errors",
+                            "bytes-sent",
+                            "bytes-received"))
+                    .withStringList(DefaultDriverOption.METRICS_NODE_ENABLED, List.of(
+                            "pool.open-connections",
+                            "pool.in-flight",
+                            "pool.available-streams",
+                            "pool.orphaned-streams",
+                            "cql-messages",
+                            "speculative-executions",
+                            "errors.request.read-timeouts",
+                            "errors.request.write-timeouts"));
+        }
+        return loader.build();
+    }
 
-            // Criar a sessão final
-            session = builder.build();
+    private void throttler(ProgrammaticDriverConfigLoaderBuilder loader) {
+        switch (throttlerType.trim().toLowerCase()) {
+            case "concurrency" -> loader
+                    .withString(DefaultDriverOption.REQUEST_THROTTLER_CLASS, "ConcurrencyLimitingRequestThrottler")
+                    .withInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_CONCURRENT_REQUESTS, throttlerMaxConcurrentRequests)
+                    .withInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_QUEUE_SIZE, throttlerMaxQueueSize);
+            case "rate" -> loader
+                    .withString(DefaultDriverOption.REQUEST_THROTTLER_CLASS, "RateLimitingRequestThrottler")
+                    .withInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_REQUESTS_PER_SECOND, throttlerMaxRequestsPerSecond)
+                    .withInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_QUEUE_SIZE, throttlerMaxQueueSize)
+                    .withDuration(DefaultDriverOption.REQUEST_THROTTLER_DRAIN_INTERVAL, Duration.ofMillis(throttlerDrainInterval));
+            case "none" -> loader.withString(DefaultDriverOption.REQUEST_THROTTLER_CLASS, "PassThroughRequestThrottler");
+            default -> throw new IllegalArgumentException("cassandra.throttler.type inválido: " + throttlerType
+                    + " (use none, concurrency ou rate)");
+        }
+    }
 
-            // Testar conexão
-            String query = "SELECT release_version FROM system.local";
-            var result = session.execute(query);
-            var version = result.one().getString("release_version");
+    @PostConstruct
+    public void postConstruct() {
+        log.info("DatabaseConfig inicializado pelo Spring");
+        log.info("Contact Points: " + contactPoints);
+        log.info("Keyspace: " + keyspace);
+        log.info("Datacenter: " + datacenter);
+    }
 
+    /**
+     * Verifica a sessão já aberta pelo bean, sem criar outra.
+     */
+    public void initCassandra() {
+        try {
+            var version = session.execute("SELECT release_version FROM system.local").one().getString("release_version");
             log.info("✅ Cassandra conectado com sucesso!");
             log.info("Versão do Cassandra: " + version);
             log.info("Keyspace ativo: " + session.getKeyspace().map(CqlIdentifier::toString).orElse("N/A"));
-
         } catch (Exception e) {
             log.error("❌ Erro ao conectar com Cassandra: " + e.getMessage());
-            e.printStackTrace();
             throw new RuntimeException("Falha na conexão com Cassandra", e);
         }
     }
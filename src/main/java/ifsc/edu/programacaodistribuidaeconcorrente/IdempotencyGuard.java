@@ -0,0 +1,310 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Detecção de envios repetidos pela chave de idempotência do cliente (por remetente).
+ *
+ * Ordem das verificações: cache LRU das chaves recentes (retry repetido custa uma consulta em
+ * memória); filtro de Bloom (chave nunca vista por esta instância é aceita sem ida ao Cassandra);
+ * e, só quando o filtro responde "talvez", uma lightweight transaction no Cassandra.
+ * O filtro tem duas gerações que giram a cada TTL, então cobre pelo menos o TTL das chaves.
+ *
+ * No cache, a reserva fica pendente até o envio terminar: um retry da mesma chave nesse intervalo
+ * recebe {@link IdempotencyKeyInProgressException} (409), e não "duplicate", porque o envio original
+ * ainda pode falhar. Só depois de {@link #confirm} a chave responde como envio repetido.
+ *
+ * O filtro só conhece as chaves desta instância desde a inicialização. Com várias instâncias,
+ * ou para não aceitar de novo retries depois de um restart, idempotency.verify-misses=true
+ * verifica toda chave nova com LWT.
+ */
+@Slf4j
+@Component
+public class IdempotencyGuard {
+
+    /**
+     * Resultado de {@link #claim}: duplicate indica que a chave já pertence a messageId.
+     * persisted indica que a chave já foi gravada no Cassandra pela LWT.
+     */
+    public record Claim(String sender, String key, UUID messageId, boolean duplicate, boolean persisted) {
+    }
+
+    // pending: reservada por um envio em andamento; false depois do confirm ou da verificação pela LWT
+    private record RecentKey(UUID messageId, long createdAt, boolean pending) {
+    }
+
+    private final MessageRepository messageRepository;
+
+    @Getter
+    @Value("${idempotency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${idempotency.ttl-seconds:86400}")
+    private int ttlSeconds;
+
+    @Value("${idempotency.max-key-length:200}")
+    private int maxKeyLength;
+
+    @Value("${idempotency.verify-misses:false}")
+    private boolean verifyMisses;
+
+    @Value("${idempotency.bloom.expected-keys:1000000}")
+    private long bloomExpectedKeys;
+
+    @Value("${idempotency.bloom.false-positive-rate:0.01}")
+    private double bloomFalsePositiveRate;
+
+    private final int cacheEntries;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, RecentKey> recent;
+
+    private volatile ConcurrentBloomFilter currentFilter;
+    private volatile ConcurrentBloomFilter previousFilter;
+    private volatile long filterRotatedAt;
+
+    private final LongAdder cacheDuplicates = new LongAdder();
+    private final LongAdder verifiedDuplicates = new LongAdder();
+    private final LongAdder verifications = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+
+    @Autowired
+    public IdempotencyGuard(MessageRepository messageRepository,
+                            @Value("${idempotency.cache.max-entries:100000}") int cacheEntries) {
+        this.messageRepository = messageRepository;
+        this.cacheEntries = cacheEntries;
+        this.recent = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RecentKey> eldest) {
+                // Reservas pendentes não saem do cache: são limitadas pelos envios em andamento
+                return size() > IdempotencyGuard.this.cacheEntries && !eldest.getValue().pending();
+            }
+        };
+    }
+
+    /**
+     * Reserva a chave para a mensagem nova ou identifica o envio como repetido.
+     * Uma reserva não duplicada deve terminar em {@link #confirm} ou {@link #release}.
+     * Chave reservada por um envio em andamento lança {@link IdempotencyKeyInProgressException}.
+     */
+    public Claim claim(String sender, String key, UUID messageId) {
+        Claim claim = reserve(sender, key, messageId);
+        if (claim != null) {
+            return claim;
+        }
+        UUID owner;
+        try {
+            owner = messageRepository.claimIdempotencyKey(sender, key, messageId, ttlSeconds);
+        } catch (RuntimeException e) {
+            // A LWT pode ter sido aplicada mesmo com erro (timeout de escrita): remove só se a chave for desta mensagem
+            release(new Claim(sender, key, messageId, false, true));
+            throw e;
+        }
+        return verified(sender, key, messageId, owner);
+    }
+
+    /**
+     * Versão não bloqueante de {@link #claim}: a LWT, quando necessária, é feita com executeAsync e
+     * limitada a timeoutMs; no timeout o future falha com TimeoutException. A reserva continua pendente
+     * até a LWT de fato terminar e só então é desfeita, com DELETE condicional ao id desta mensagem, para que
+     * uma LWT atrasada não deixe a chave gravada sem mensagem. Chave inválida lança IllegalArgumentException
+     * e chave em andamento lança IdempotencyKeyInProgressException antes de retornar.
+     */
+    public CompletableFuture<Claim> claimAsync(String sender, String key, UUID messageId, long timeoutMs) {
+        Claim claim = reserve(sender, key, messageId);
+        if (claim != null) {
+            return CompletableFuture.completedFuture(claim);
+        }
+        CompletableFuture<UUID> lwt = messageRepository.claimIdempotencyKeyAsync(sender, key, messageId, ttlSeconds)
+                .toCompletableFuture();
+        return lwt.copy()
+                .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .handle((owner, error) -> {
+                    if (error != null) {
+                        Claim abandoned = new Claim(sender, key, messageId, false, true);
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        if (cause instanceof TimeoutException) {
+                            lwt.whenComplete((ignored, lwtError) -> release(abandoned));
+                        } else {
+                            release(abandoned);
+                        }
+                        throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+                    }
+                    return verified(sender, key, messageId, owner);
+                });
+    }
+
+    // Cache e filtro de Bloom; null quando a chave precisa ser verificada com LWT
+    private Claim reserve(String sender, String key, UUID messageId) {
+        if (key.length() > maxKeyLength) {
+            throw new IllegalArgumentException("idempotency_key maior que " + maxKeyLength + " caracteres");
+        }
+        String cacheKey = sender + '\n' + key;
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            RecentKey existing = recent.get(cacheKey);
+            if (existing != null && existing.pending()) {
+                throw new IdempotencyKeyInProgressException(key);
+            }
+            if (existing != null && now - existing.createdAt() <= TimeUnit.SECONDS.toMillis(ttlSeconds)) {
+                cacheDuplicates.increment();
+                return new Claim(sender, key, existing.messageId(), true, true);
+            }
+            // Reserva pendente: um retry concorrente da mesma chave recebe 409 até o confirm ou o release
+            recent.put(cacheKey, new RecentKey(messageId, now, true));
+        } finally {
+            lock.unlock();
+        }
+        ConcurrentBloomFilter filter = filter(now);
+        ConcurrentBloomFilter previous = previousFilter;
+        boolean maybeSeen = filter.mightContain(cacheKey) || (previous != null && previous.mightContain(cacheKey));
+        filter.put(cacheKey);
+
+        if (!maybeSeen && !verifyMisses) {
+            accepted.increment();
+            return new Claim(sender, key, messageId, false, false);
+        }
+        verifications.increment();
+        return null;
+    }
+
+    // Resultado da LWT: owner nulo ou igual a messageId indica que a chave é desta mensagem
+    private Claim verified(String sender, String key, UUID messageId, UUID owner) {
+        if (owner == null || owner.equals(messageId)) {
+            accepted.increment();
+            return new Claim(sender, key, messageId, false, true);
+        }
+        verifiedDuplicates.increment();
+        lock.lock();
+        try {
+            RecentKey reserved = recent.get(sender + '\n' + key);
+            if (reserved != null && reserved.messageId().equals(messageId)) {
+                recent.put(sender + '\n' + key, new RecentKey(owner, System.currentTimeMillis(), false));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new Claim(sender, key, owner, true, true);
+    }
+
+    /**
+     * Envio concluído: a reserva passa a responder como envio repetido e a chave é gravada no
+     * Cassandra se a LWT ainda não gravou.
+     */
+    public void confirm(Claim claim) {
+        if (claim == null || claim.duplicate()) {
+            return;
+        }
+        String cacheKey = claim.sender() + '\n' + claim.key();
+        lock.lock();
+        try {
+            RecentKey reserved = recent.get(cacheKey);
+            if (reserved != null && reserved.messageId().equals(claim.messageId())) {
+                recent.put(cacheKey, new RecentKey(claim.messageId(), reserved.createdAt(), false));
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (claim.persisted()) {
+            return;
+        }
+        messageRepository.saveIdempotencyKeyAsync(claim.sender(), claim.key(), claim.messageId(), ttlSeconds)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        log.warn("⚠️ Chave de idempotência não gravada para {}: {}", claim.messageId(), error.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Envio falhou: libera a chave para que o retry do cliente seja processado. No Cassandra a chave
+     * só é removida se ainda pertencer a esta mensagem (DELETE ... IF message_id = ?).
+     */
+    public void release(Claim claim) {
+        if (claim == null || claim.duplicate()) {
+            return;
+        }
+        forget(claim.sender() + '\n' + claim.key(), claim.messageId());
+        if (claim.persisted()) {
+            messageRepository.deleteIdempotencyKeyAsync(claim.sender(), claim.key(), claim.messageId())
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            log.warn("⚠️ Chave de idempotência não removida para {}: {}", claim.messageId(), error.getMessage());
+                        }
+                    });
+        }
+    }
+
+    private void forget(String cacheKey, UUID messageId) {
+        lock.lock();
+        try {
+            RecentKey reserved = recent.get(cacheKey);
+            if (reserved != null && reserved.messageId().equals(messageId)) {
+                recent.remove(cacheKey);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Gira as gerações do filtro a cada TTL: a anterior ainda responde pelas chaves do último período
+    private ConcurrentBloomFilter filter(long now) {
+        ConcurrentBloomFilter filter = currentFilter;
+        if (filter != null && now - filterRotatedAt < TimeUnit.SECONDS.toMillis(ttlSeconds)) {
+            return filter;
+        }
+        lock.lock();
+        try {
+            if (currentFilter == null || now - filterRotatedAt >= TimeUnit.SECONDS.toMillis(ttlSeconds)) {
+                previousFilter = currentFilter;
+                currentFilter = new ConcurrentBloomFilter(bloomExpectedKeys, bloomFalsePositiveRate);
+                filterRotatedAt = now;
+                log.debug("Filtro de idempotência girado ({} bits)", currentFilter.getBitCount());
+            }
+            return currentFilter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCachedKeys() {
+        lock.lock();
+        try {
+            return recent.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCacheDuplicateCount() {
+        return cacheDuplicates.sum();
+    }
+
+    public long getVerifiedDuplicateCount() {
+        return verifiedDuplicates.sum();
+    }
+
+    public long getVerificationCount() {
+        return verifications.sum();
+    }
+
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+}
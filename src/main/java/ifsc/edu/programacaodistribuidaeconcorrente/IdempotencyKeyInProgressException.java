@@ -0,0 +1,19 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.Getter;
+
+/**
+ * Chave de idempotência reservada por um envio que ainda não terminou (nem confirmado, nem liberado).
+ */
+@Getter
+public class IdempotencyKeyInProgressException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String key;
+
+    public IdempotencyKeyInProgressException(String key) {
+        super("Envio com a chave " + key + " ainda em andamento");
+        this.key = key;
+    }
+}
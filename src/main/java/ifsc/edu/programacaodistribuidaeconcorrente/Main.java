@@ -3,7 +3,6 @@ package ifsc.edu.programacaodistribuidaeconcorrente;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.ConfigurableApplicationContext;
 
 @Slf4j
 @SpringBootApplication
@@ -12,26 +11,17 @@ public class Main {
         log.info("Iniciando aplicação Spring Boot...");
 
         try {
-            // Inicializar o contexto do Spring
-            ConfigurableApplicationContext context = SpringApplication.run(Main.class, args);
-
-            // Obter o bean do MessageServer
-            MessageServer server = context.getBean(MessageServer.class);
-
-            // Configurar shutdown hook
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                log.info("\nEncerrando servidor...");
-                server.shutdown();
-                context.close();
-                log.info("Aplicação encerrada com sucesso.");
-            }));
-
-            server.start();
+            // O MessageServer é iniciado e parado pelo ciclo de vida do contexto (SmartLifecycle);
+            // o shutdown hook registrado pelo Spring fecha o contexto ao encerrar a JVM
+            SpringApplication.run(Main.class, args);
 
+        } catch (SpringApplication.AbandonedRunException e) {
+            // Execução interrompida de propósito pelo processamento AOT no build: não é erro
+            throw e;
         } catch (Exception e) {
             log.error("Erro ao iniciar aplicação: " + e.getMessage());
             e.printStackTrace();
             System.exit(1);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,255 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Ingestão em lote para POST /api/send/batch. O corpo (array JSON ou NDJSON) é lido
+ * item a item com o parser de streaming do Jackson, então só um bloco de mensagens fica
+ * em memória por vez. Cada bloco é publicado de uma vez no mesmo canal e gravado no
+ * Cassandra com uma única chamada agrupada por partição. Com o outbox habilitado, as escritas
+ * (um BATCH LOGGED mensagem + outbox por item) do bloco são disparadas juntas com executeAsync,
+ * então api.send.batch.chunk-size limita as escritas em voo.
+ */
+@Slf4j
+@Component
+public class MessageBatchIngestor {
+
+    public static final String STATUS_SENT = MessageStatus.SENT.value();
+    public static final String STATUS_INVALID = "invalid";
+    public static final String STATUS_RATE_LIMITED = "rate_limited";
+    public static final String STATUS_DUPLICATE = "duplicate";
+    public static final String STATUS_IN_PROGRESS = "in_progress";
+    public static final String STATUS_ERROR = "error";
+
+    private final MessageRepository messageRepository;
+    private final MessagePublisher messagePublisher;
+    private final OutboxRelay outboxRelay;
+    private final RecentMessageCache recentMessageCache;
+    private final AdmissionControl admissionControl;
+    private final IdempotencyGuard idempotencyGuard;
+    private final MessageStatusCounters statusCounters;
+    private final ObjectMapper objectMapper;
+
+    @Value("${api.send.batch.chunk-size:100}")
+    private int chunkSize;
+
+    @Value("${api.send.batch.max-items:10000}")
+    private int maxItems;
+
+    /**
+     * Resultado da ingestão: um item por entrada do corpo, na mesma ordem.
+     * error é preenchido quando o corpo foi interrompido (JSON inválido ou limite de itens).
+     */
+    public record BatchResult(List<Map<String, Object>> items, int sent, int failed, String error) {
+    }
+
+    @Autowired
+    public MessageBatchIngestor(MessageRepository messageRepository,
+                                MessagePublisher messagePublisher,
+                                OutboxRelay outboxRelay,
+                                RecentMessageCache recentMessageCache,
+                                AdmissionControl admissionControl,
+                                IdempotencyGuard idempotencyGuard,
+                                MessageStatusCounters statusCounters,
+                                ObjectMapper objectMapper) {
+        this.messageRepository = messageRepository;
+        this.messagePublisher = messagePublisher;
+        this.outboxRelay = outboxRelay;
+        this.recentMessageCache = recentMessageCache;
+        this.admissionControl = admissionControl;
+        this.idempotencyGuard = idempotencyGuard;
+        this.statusCounters = statusCounters;
+        this.objectMapper = objectMapper;
+    }
+
+    public BatchResult ingest(InputStream body) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        List<Message> chunk = new ArrayList<>(chunkSize);
+        List<Map<String, Object>> chunkItems = new ArrayList<>(chunkSize);
+        List<IdempotencyGuard.Claim> chunkClaims = new ArrayList<>(chunkSize);
+        String error = null;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken token = parser.nextToken();
+            // Array JSON: percorre os elementos; caso contrário, NDJSON (valores na raiz separados por quebra de linha)
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                if (items.size() >= maxItems) {
+                    error = "limite de " + maxItems + " itens por lote excedido";
+                    break;
+                }
+                int index = items.size();
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    items.add(item(index, null, STATUS_INVALID, "item deve ser um objeto JSON"));
+                } else {
+                    SendMessageRequest request = objectMapper.readValue(parser, SendMessageRequest.class);
+                    if (request.message() == null) {
+                        items.add(item(index, null, STATUS_INVALID, "campo 'message' obrigatório"));
+                    } else if (!admissionControl.tryAcquireRate(request.sender())) {
+                        items.add(item(index, null, STATUS_RATE_LIMITED, "remetente acima da taxa permitida"));
+                    } else {
+                        Message message = SimpleMessageController.newMessage(request);
+                        IdempotencyGuard.Claim claim = null;
+                        String claimStatus = null;
+                        String claimError = null;
+                        try {
+                            claim = claim(request, message);
+                        } catch (IdempotencyKeyInProgressException e) {
+                            claimStatus = STATUS_IN_PROGRESS;
+                            claimError = e.getMessage();
+                        } catch (RuntimeException e) {
+                            claimStatus = STATUS_ERROR;
+                            claimError = e.getMessage();
+                        }
+                        if (claimStatus != null) {
+                            items.add(item(index, null, claimStatus, claimError));
+                        } else if (claim != null && claim.duplicate()) {
+                            items.add(item(index, claim.messageId().toString(), STATUS_DUPLICATE, null));
+                        } else {
+                            Map<String, Object> item = item(index, message.getId().toString(), STATUS_SENT, null);
+                            items.add(item);
+                            chunk.add(message);
+                            chunkItems.add(item);
+                            chunkClaims.add(claim);
+                        }
+                        if (chunk.size() >= chunkSize) {
+                            flush(chunk, chunkItems, chunkClaims);
+                            chunk = new ArrayList<>(chunkSize);
+                            chunkItems = new ArrayList<>(chunkSize);
+                            chunkClaims = new ArrayList<>(chunkSize);
+                        }
+                    }
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            error = "JSON inválido no item " + items.size() + ": " + e.getOriginalMessage();
+        } catch (IOException e) {
+            error = "Falha ao ler o corpo da requisição: " + e.getMessage();
+        }
+        if (!chunk.isEmpty()) {
+            flush(chunk, chunkItems, chunkClaims);
+        }
+
+        // Repetições de envios já aceitos contam como sucesso
+        int sent = 0;
+        for (Map<String, Object> item : items) {
+            if (STATUS_SENT.equals(item.get("status")) || STATUS_DUPLICATE.equals(item.get("status"))) {
+                sent++;
+            }
+        }
+        log.debug("📤 Lote processado: {} itens, {} enviados", items.size(), sent);
+        return new BatchResult(items, sent, items.size() - sent, error);
+    }
+
+    private IdempotencyGuard.Claim claim(SendMessageRequest request, Message message) {
+        String key = request.idempotencyKey();
+        if (key == null || !idempotencyGuard.isEnabled()) {
+            return null;
+        }
+        return idempotencyGuard.claim(message.getSender(), key, message.getId());
+    }
+
+    /**
+     * Publica e grava um bloco e então confirma ou libera as chaves de idempotência.
+     */
+    private void flush(List<Message> chunk, List<Map<String, Object>> chunkItems, List<IdempotencyGuard.Claim> chunkClaims) {
+        write(chunk, chunkItems);
+        for (int i = 0; i < chunk.size(); i++) {
+            if (STATUS_SENT.equals(chunkItems.get(i).get("status"))) {
+                idempotencyGuard.confirm(chunkClaims.get(i));
+                statusCounters.record(chunk.get(i).getSender(), MessageStatus.SENT);
+            } else {
+                idempotencyGuard.release(chunkClaims.get(i));
+            }
+        }
+    }
+
+    /**
+     * Publica e grava um bloco. Os itens já foram registrados como enviados; os que falham
+     * têm o status trocado para erro. Com o outbox habilitado só há a escrita no Cassandra.
+     */
+    private void write(List<Message> chunk, List<Map<String, Object>> chunkItems) {
+        if (outboxRelay.isEnabled()) {
+            // Cada item vai para partições diferentes (mensagem e shard do outbox): um BATCH LOGGED
+            // por item, todos em voo ao mesmo tempo, em vez de um único batch com várias partições
+            List<CompletableFuture<Void>> writes = new ArrayList<>(chunk.size());
+            for (Message message : chunk) {
+                writes.add(messageRepository.saveWithOutboxAsync(message).toCompletableFuture());
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    writes.get(i).join();
+                    recentMessageCache.put(chunk.get(i));
+                } catch (CompletionException e) {
+                    fail(chunkItems.get(i), e.getCause() != null ? e.getCause() : e);
+                }
+            }
+            return;
+        }
+
+        List<CompletableFuture<Void>> confirms = messagePublisher.publishAll(chunk);
+        List<Message> published = new ArrayList<>(chunk.size());
+        List<Map<String, Object>> publishedItems = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            try {
+                confirms.get(i).join();
+                published.add(chunk.get(i));
+                publishedItems.add(chunkItems.get(i));
+            } catch (CompletionException e) {
+                fail(chunkItems.get(i), e.getCause() != null ? e.getCause() : e);
+            }
+        }
+        if (published.isEmpty()) {
+            return;
+        }
+
+        try {
+            messageRepository.saveBatchAsync(published).toCompletableFuture().join();
+            published.forEach(recentMessageCache::put);
+        } catch (Exception e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            for (Map<String, Object> item : publishedItems) {
+                fail(item, cause);
+            }
+        }
+    }
+
+    private static void fail(Map<String, Object> item, Throwable error) {
+        item.put("status", STATUS_ERROR);
+        item.put("error", String.valueOf(error.getMessage()));
+    }
+
+    private static Map<String, Object> item(int index, String messageId, String status, String error) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("index", index);
+        if (messageId != null) {
+            item.put("message_id", messageId);
+        }
+        item.put("status", status);
+        if (error != null) {
+            item.put("error", error);
+        }
+        return item;
+    }
+}
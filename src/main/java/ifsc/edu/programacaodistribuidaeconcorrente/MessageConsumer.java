@@ -0,0 +1,224 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.rabbitmq.client.Channel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Consumidor push da fila de mensagens. Recebe lotes do listener container,
+ * marca cada mensagem como "delivered" no Cassandra e confirma o lote com um único
+ * basicAck múltiplo. Mensagem inválida é rejeitada sem requeue e vai para a DLQ; mensagem cuja
+ * gravação falhou é reagendada por {@link MessageRetrier} e, esgotadas as tentativas, também vai para a DLQ.
+ * As mensagens marcadas entram na contagem de {@link MessageStatusCounters}.
+ */
+@Slf4j
+@Component
+public class MessageConsumer implements ChannelAwareBatchMessageListener {
+
+    private final MessageRepository messageRepository;
+    private final MessageConverter messageConverter;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageStatusCounters statusCounters;
+    private final MessageRetrier messageRetrier;
+    private final MessagingThreads messagingThreads;
+    // Descompressão por mensagem, e não no container: falha nela é conversão inválida (DLQ), não do lote inteiro
+    private final MessagePostProcessor decompressor;
+
+    @Value("${consumer.status-update-timeout-ms:5000}")
+    private long statusUpdateTimeoutMs;
+
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Getter
+    private volatile double consumedPerSecond;
+    private long lastConsumed;
+    private ScheduledExecutorService rateSampler;
+
+    @Autowired
+    public MessageConsumer(MessageRepository messageRepository,
+                           MessageConverter messageConverter,
+                           RecentMessageCache recentMessageCache,
+                           MessageStatusCounters statusCounters,
+                           MessageRetrier messageRetrier,
+                           PayloadCompressor payloadCompressor,
+                           MessagingThreads messagingThreads) {
+        this.messageRepository = messageRepository;
+        this.messageConverter = messageConverter;
+        this.recentMessageCache = recentMessageCache;
+        this.statusCounters = statusCounters;
+        this.messageRetrier = messageRetrier;
+        this.decompressor = payloadCompressor.decompressingPostProcessor();
+        this.messagingThreads = messagingThreads;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        rateSampler = messagingThreads.scheduledExecutor("consumer-rate-sampler");
+        rateSampler.scheduleAtFixedRate(this::sampleRate, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private void sampleRate() {
+        long total = consumed.sum();
+        consumedPerSecond = total - lastConsumed;
+        lastConsumed = total;
+    }
+
+    @Override
+    public void onMessageBatch(List<org.springframework.amqp.core.Message> batch, Channel channel) {
+        List<CompletableFuture<Void>> updates = new ArrayList<>(batch.size());
+        long[] tags = new long[batch.size()];
+
+        for (int i = 0; i < batch.size(); i++) {
+            org.springframework.amqp.core.Message amqpMessage = batch.get(i);
+            tags[i] = amqpMessage.getMessageProperties().getDeliveryTag();
+            try {
+                Message message = (Message) messageConverter.fromMessage(decompressor.postProcessMessage(amqpMessage));
+                updates.add(messageRepository.updateStatusAsync(message, MessageStatus.DELIVERED)
+                        .thenRun(() -> statusCounters.record(message.getSender(), MessageStatus.DELIVERED))
+                        .toCompletableFuture());
+                recentMessageCache.updateStatus(message.getSender(), message.getId(), MessageStatus.DELIVERED.value());
+            } catch (Exception e) {
+                log.error("❌ Mensagem inválida na fila (tag {}): {}", tags[i], e.getMessage());
+                updates.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[0]))
+                    .get(statusUpdateTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Falhas individuais são tratadas abaixo
+        }
+
+        acknowledge(batch, updates, tags, channel);
+    }
+
+    private void acknowledge(List<org.springframework.amqp.core.Message> batch,
+                             List<CompletableFuture<Void>> updates,
+                             long[] tags,
+                             Channel channel) {
+        List<CompletableFuture<Boolean>> retries = scheduleRetries(batch, updates);
+        long highestAcked = -1;
+        int failures = 0;
+        try {
+            for (int i = 0; i < updates.size(); i++) {
+                CompletableFuture<Void> update = updates.get(i);
+                if (update.isDone() && !update.isCompletedExceptionally()) {
+                    highestAcked = Math.max(highestAcked, tags[i]);
+                    continue;
+                }
+                failures++;
+                CompletableFuture<Boolean> retry = retries.get(i);
+                if (retry == null) {
+                    // Mensagem não convertida não volta para a fila: o broker a move para a DLQ
+                    messageRetrier.recordDeadLettered();
+                    channel.basicNack(tags[i], false, false);
+                } else if (!retry.isDone() || retry.isCompletedExceptionally()) {
+                    // Retentativa não agendada (ou desabilitada): reentrega a original
+                    channel.basicNack(tags[i], false, true);
+                } else if (retry.join()) {
+                    // Cópia confirmada na fila de atraso: a original sai no ack múltiplo
+                    highestAcked = Math.max(highestAcked, tags[i]);
+                } else {
+                    log.warn("⚠️ Tentativas esgotadas (tag {}): mensagem enviada para a DLQ", tags[i]);
+                    messageRetrier.recordDeadLettered();
+                    channel.basicNack(tags[i], false, false);
+                }
+            }
+            if (highestAcked >= 0) {
+                // Um único ack múltiplo para todas as mensagens processadas do lote
+                channel.basicAck(highestAcked, true);
+            }
+        } catch (IOException e) {
+            log.error("❌ Erro ao confirmar lote de {} mensagens: {}", batch.size(), e.getMessage());
+            return;
+        }
+
+        consumed.add(batch.size() - failures);
+        failed.add(failures);
+        log.debug("Lote consumido: {} mensagens, {} falhas", batch.size(), failures);
+    }
+
+    /**
+     * Agenda as retentativas das gravações que falharam e espera os confirms.
+     * Posição null: mensagem inválida, que não é reagendada.
+     */
+    private List<CompletableFuture<Boolean>> scheduleRetries(List<org.springframework.amqp.core.Message> batch,
+                                                             List<CompletableFuture<Void>> updates) {
+        List<CompletableFuture<Boolean>> retries = new ArrayList<>(updates.size());
+        boolean scheduled = false;
+        for (int i = 0; i < updates.size(); i++) {
+            CompletableFuture<Void> update = updates.get(i);
+            if (update.isDone() && !update.isCompletedExceptionally()) {
+                retries.add(CompletableFuture.completedFuture(true));
+            } else if (isConversionFailure(update)) {
+                retries.add(null);
+            } else if (!messageRetrier.isEnabled()) {
+                retries.add(CompletableFuture.failedFuture(new IllegalStateException("retentativas desabilitadas")));
+            } else {
+                retries.add(messageRetrier.retry(batch.get(i)));
+                scheduled = true;
+            }
+        }
+        if (scheduled) {
+            try {
+                CompletableFuture.allOf(retries.stream().filter(Objects::nonNull).toArray(CompletableFuture<?>[]::new))
+                        .get(statusUpdateTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // Retentativa não confirmada: a mensagem é reentregue
+            }
+        }
+        return retries;
+    }
+
+    private static boolean isConversionFailure(CompletableFuture<Void> update) {
+        if (!update.isCompletedExceptionally()) {
+            return false;
+        }
+        try {
+            update.join();
+            return false;
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return cause instanceof org.springframework.amqp.support.converter.MessageConversionException
+                    || cause instanceof ClassCastException;
+        }
+    }
+
+    public long getConsumedCount() {
+        return consumed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (rateSampler != null) {
+            rateSampler.shutdownNow();
+        }
+    }
+}
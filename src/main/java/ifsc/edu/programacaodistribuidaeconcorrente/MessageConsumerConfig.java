@@ -0,0 +1,76 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+@Configuration
+public class MessageConsumerConfig {
+
+    @Value("${consumer.enabled:true}")
+    private boolean enabled;
+
+    @Value("${consumer.concurrency:2}")
+    private int concurrency;
+
+    @Value("${consumer.max-concurrency:4}")
+    private int maxConcurrency;
+
+    @Value("${consumer.prefetch:250}")
+    private int prefetch;
+
+    @Value("${consumer.batch-size:50}")
+    private int batchSize;
+
+    @Value("${consumer.batch-timeout-ms:100}")
+    private long batchTimeoutMs;
+
+    /**
+     * Um container por shard. Com uma única fila vale consumer.concurrency/max-concurrency;
+     * com a fila particionada cada shard tem exatamente um consumidor, o que mantém a ordem
+     * das mensagens de cada remetente e escala com o número de shards.
+     */
+    @Bean
+    public MessageListenerContainers messageListenerContainers(ConnectionFactory connectionFactory,
+                                                               MessageConsumer messageConsumer,
+                                                               MessagingThreads messagingThreads,
+                                                               QueueSharding queueSharding) {
+        boolean sharded = queueSharding.getShards() > 1;
+        int consumers = sharded ? 1 : concurrency;
+        int maxConsumers = sharded ? 1 : Math.max(concurrency, maxConcurrency);
+
+        List<SimpleMessageListenerContainer> containers = new ArrayList<>();
+        for (int shard = 0; shard < queueSharding.getShards(); shard++) {
+            SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+            container.setQueueNames(queueSharding.queueName(shard));
+            container.setConcurrentConsumers(consumers);
+            container.setMaxConcurrentConsumers(maxConsumers);
+            container.setPrefetchCount(prefetch);
+
+            // Entrega em lote: o lote fecha ao atingir batch-size ou após batch-timeout-ms sem novas mensagens
+            container.setConsumerBatchEnabled(true);
+            container.setBatchSize(batchSize);
+            container.setReceiveTimeout(batchTimeoutMs);
+
+            container.setTaskExecutor(messagingThreads.taskExecutor(
+                    sharded ? "message-consumer-" + shard + "-" : "message-consumer-"));
+            container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+            container.setMessageListener(messageConsumer);
+            container.setAutoStartup(enabled);
+            containers.add(container);
+        }
+
+        log.info("Consumidor configurado (habilitado: " + enabled + ", shards: " + queueSharding.getShards() +
+                ", consumidores por shard: " + consumers + "-" + maxConsumers + ", prefetch: " + prefetch +
+                ", lote: " + batchSize + ")");
+        return new MessageListenerContainers(containers, enabled);
+    }
+}
@@ -0,0 +1,33 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+
+/**
+ * Serializa {@link Message} nas respostas da API direto no gerador, com os mesmos campos
+ * de antes (o conteúdo sai como "message"), sem montar um Map por mensagem.
+ * Registrado só no ObjectMapper do Spring MVC: o JSON publicado no RabbitMQ não muda.
+ */
+@JsonComponent
+public class MessageJsonSerializer extends JsonSerializer<Message> {
+
+    @Override
+    public void serialize(Message message, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", message.getId() == null ? null : message.getId().toString());
+        generator.writeStringField("sender", message.getSender());
+        generator.writeStringField("message", message.getContent());
+        generator.writeNumberField("timestamp", message.getTimestamp());
+        generator.writeStringField("status", message.getStatus());
+        generator.writeEndObject();
+    }
+
+    @Override
+    public Class<Message> handledType() {
+        return Message.class;
+    }
+}
@@ -0,0 +1,63 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.SmartLifecycle;
+
+import java.util.List;
+
+/**
+ * Os listener containers da fila de mensagens, um por shard, com o ciclo de vida
+ * controlado pelo Spring como se fossem um único container.
+ */
+public class MessageListenerContainers implements SmartLifecycle, InitializingBean, DisposableBean {
+
+    private final List<SimpleMessageListenerContainer> containers;
+    private final boolean autoStartup;
+
+    public MessageListenerContainers(List<SimpleMessageListenerContainer> containers, boolean autoStartup) {
+        this.containers = List.copyOf(containers);
+        this.autoStartup = autoStartup;
+    }
+
+    public List<SimpleMessageListenerContainer> getContainers() {
+        return containers;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        containers.forEach(SimpleMessageListenerContainer::afterPropertiesSet);
+    }
+
+    @Override
+    public void start() {
+        containers.forEach(SimpleMessageListenerContainer::start);
+    }
+
+    @Override
+    public void stop() {
+        containers.forEach(SimpleMessageListenerContainer::stop);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return containers.stream().anyMatch(SimpleMessageListenerContainer::isRunning);
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return autoStartup;
+    }
+
+    // Mesma fase dos containers do Spring AMQP: param de consumir antes dos demais beans
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void destroy() {
+        containers.forEach(SimpleMessageListenerContainer::destroy);
+    }
+}
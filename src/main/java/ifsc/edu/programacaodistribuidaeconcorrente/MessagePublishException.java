@@ -0,0 +1,20 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.Getter;
+
+/**
+ * Falha de publicação de uma mensagem: nack do broker, mensagem sem rota,
+ * timeout de confirmação ou limite de mensagens em voo atingido.
+ */
+@Getter
+public class MessagePublishException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String messageId;
+
+    public MessagePublishException(String messageId, String reason) {
+        super("Falha ao publicar mensagem " + messageId + ": " + reason);
+        this.messageId = messageId;
+    }
+}
@@ -0,0 +1,343 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publicação de mensagens com publisher confirms correlacionados.
+ * Cada mensagem leva um CorrelationData com o seu id e o resultado do confirm chega
+ * de forma assíncrona, então várias publicações ficam em voo ao mesmo tempo no mesmo canal.
+ * Um semáforo limita quantas mensagens podem estar sem confirmação.
+ * Opcionalmente agrupa as mensagens por tamanho ou tempo e as publica juntas em um único canal.
+ */
+@Slf4j
+@Component
+public class MessagePublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MessagingThreads messagingThreads;
+    private final QueueSharding queueSharding;
+    private final String exchangeName;
+    private final MessagingMetrics metrics;
+
+    @Getter
+    @Value("${publisher.confirms.enabled:true}")
+    private boolean confirmsEnabled;
+
+    @Value("${publisher.max-in-flight:1000}")
+    private int maxInFlight;
+
+    @Value("${publisher.acquire-timeout-ms:1000}")
+    private long acquireTimeoutMs;
+
+    @Value("${publisher.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    @Value("${publisher.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${publisher.batch.size:100}")
+    private int batchSize;
+
+    @Value("${publisher.batch.interval-ms:10}")
+    private long batchIntervalMs;
+
+    private Semaphore inFlight;
+    private BlockingQueue<PendingPublish> pending;
+    private Thread batchSender;
+    private volatile boolean running = false;
+
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder nacked = new LongAdder();
+    private final LongAdder confirmLatencyNanos = new LongAdder();
+
+    private record PendingPublish(Message message, CompletableFuture<Void> result, long startNanos) {
+    }
+
+    @Autowired
+    public MessagePublisher(RabbitTemplate rabbitTemplate,
+                            MessagingThreads messagingThreads,
+                            MessagingMetrics metrics,
+                            QueueSharding queueSharding,
+                            @Value("${exchange.message.name}") String exchangeName) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.messagingThreads = messagingThreads;
+        this.metrics = metrics;
+        this.queueSharding = queueSharding;
+        this.exchangeName = exchangeName;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        inFlight = new Semaphore(maxInFlight);
+        if (confirmsEnabled && batchEnabled) {
+            pending = new LinkedBlockingQueue<>();
+            running = true;
+            batchSender = messagingThreads.start("publisher-batch-sender", this::batchLoop);
+        }
+        log.info("Publisher configurado (confirms: " + confirmsEnabled + ", em voo: " + maxInFlight +
+                ", lote: " + (batchEnabled ? batchSize + "/" + batchIntervalMs + "ms" : "desabilitado") + ")");
+    }
+
+    /**
+     * Publica a mensagem e retorna um future que completa quando o broker confirma (ack)
+     * ou falha com {@link MessagePublishException} em caso de nack, mensagem sem rota ou timeout.
+     */
+    public CompletableFuture<Void> publish(Message message) {
+        return publish(message, acquireTimeoutMs);
+    }
+
+    /**
+     * Como {@link #publish(Message)}, mas sem esperar permissão de mensagem em voo: no limite de
+     * publisher.max-in-flight o future já retorna falho. Não bloqueia a thread chamadora.
+     */
+    public CompletableFuture<Void> tryPublish(Message message) {
+        return publish(message, 0);
+    }
+
+    private CompletableFuture<Void> publish(Message message, long permitWaitMs) {
+        long start = metrics.start(MessagingMetrics.STAGE_PUBLISH);
+        CompletableFuture<Void> result = doPublish(message, permitWaitMs);
+        metrics.recordAsync(MessagingMetrics.STAGE_PUBLISH, start, result);
+        return result;
+    }
+
+    private CompletableFuture<Void> doPublish(Message message, long permitWaitMs) {
+        if (!confirmsEnabled) {
+            try {
+                convertAndSend(rabbitTemplate, message, null);
+                return CompletableFuture.completedFuture(null);
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        PendingPublish publish = reserve(message, permitWaitMs);
+        if (publish.result().isDone()) {
+            return publish.result();
+        }
+        if (batchEnabled && running) {
+            pending.add(publish);
+        } else {
+            try {
+                send(rabbitTemplate, publish);
+            } catch (Exception e) {
+                publish.result().completeExceptionally(e);
+            }
+        }
+        return publish.result();
+    }
+
+    /**
+     * Publica várias mensagens de uma vez, todas no mesmo canal e sem esperar confirms entre elas.
+     * Retorna um future por mensagem, na mesma ordem da lista. O lote não deve passar de
+     * publisher.max-in-flight, senão as últimas mensagens esperam permissões que só o próprio lote libera.
+     */
+    public List<CompletableFuture<Void>> publishAll(List<Message> messages) {
+        if (!confirmsEnabled) {
+            return messages.stream().map(this::publish).toList();
+        }
+        List<CompletableFuture<Void>> results = new ArrayList<>(messages.size());
+        List<PendingPublish> batch = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            long start = metrics.start(MessagingMetrics.STAGE_PUBLISH);
+            PendingPublish publish = reserve(message, acquireTimeoutMs);
+            metrics.recordAsync(MessagingMetrics.STAGE_PUBLISH, start, publish.result());
+            results.add(publish.result());
+            if (!publish.result().isDone()) {
+                batch.add(publish);
+            }
+        }
+        if (!batch.isEmpty()) {
+            sendBatch(batch);
+        }
+        return results;
+    }
+
+    /**
+     * Reserva uma permissão de mensagem em voo e prepara o future do confirm.
+     * Se não houver permissão dentro de permitWaitMs, o future já retorna falho.
+     */
+    private PendingPublish reserve(Message message, long permitWaitMs) {
+        String id = message.getId().toString();
+        try {
+            if (!inFlight.tryAcquire(permitWaitMs, TimeUnit.MILLISECONDS)) {
+                return new PendingPublish(message, CompletableFuture.failedFuture(
+                        new MessagePublishException(id, "limite de " + maxInFlight + " mensagens sem confirmação")), 0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new PendingPublish(message, CompletableFuture.failedFuture(new MessagePublishException(id, "interrompido")), 0);
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        AtomicBoolean released = new AtomicBoolean();
+        result.orTimeout(confirmTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, error) -> {
+                    if (released.compareAndSet(false, true)) {
+                        inFlight.release();
+                    }
+                });
+        return new PendingPublish(message, result, System.nanoTime());
+    }
+
+    /**
+     * Republica uma mensagem AMQP já serializada (retentativa, reprocessamento da DLQ) e retorna
+     * um future que completa com o confirm do broker. Não ocupa permissões de publisher.max-in-flight.
+     */
+    public CompletableFuture<Void> republish(String exchange, String routingKey, org.springframework.amqp.core.Message amqpMessage) {
+        String messageId = amqpMessage.getMessageProperties().getMessageId();
+        String id = messageId != null ? messageId : UUID.randomUUID().toString();
+        try {
+            if (!confirmsEnabled) {
+                rabbitTemplate.send(exchange, routingKey, amqpMessage);
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            rabbitTemplate.send(exchange, routingKey, amqpMessage, correlate(id, result, System.nanoTime()));
+            return result.orTimeout(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void send(RabbitOperations operations, PendingPublish publish) {
+        String id = publish.message().getId().toString();
+        convertAndSend(operations, publish.message(), correlate(id, publish.result(), publish.startNanos()));
+    }
+
+    private CorrelationData correlate(String id, CompletableFuture<Void> result, long startNanos) {
+        CorrelationData correlation = new CorrelationData(id);
+        correlation.getFuture().whenComplete((confirm, error) -> {
+            long latency = System.nanoTime() - startNanos;
+            if (error != null) {
+                nacked.increment();
+                result.completeExceptionally(new MessagePublishException(id, error.getMessage()));
+            } else if (!confirm.isAck()) {
+                nacked.increment();
+                log.warn("⚠️ Nack do broker para a mensagem {}: {}", id, confirm.getReason());
+                result.completeExceptionally(new MessagePublishException(id, "nack: " + confirm.getReason()));
+            } else if (correlation.getReturned() != null) {
+                nacked.increment();
+                log.warn("⚠️ Mensagem {} sem rota: {}", id, correlation.getReturned().getReplyText());
+                result.completeExceptionally(new MessagePublishException(id, "sem rota"));
+            } else {
+                confirmed.increment();
+                confirmLatencyNanos.add(latency);
+                result.complete(null);
+            }
+        });
+        return correlation;
+    }
+
+    // Routing key do shard do remetente; na exchange headers o shard vai no header message-shard
+    private void convertAndSend(RabbitOperations operations, Message message, CorrelationData correlation) {
+        String routingKey = queueSharding.routingKey(message);
+        if (queueSharding.usesShardHeader()) {
+            int shard = queueSharding.shardOf(message.getSender());
+            operations.convertAndSend(exchangeName, routingKey, message, amqpMessage -> {
+                amqpMessage.getMessageProperties().setHeader(QueueSharding.SHARD_HEADER, shard);
+                return amqpMessage;
+            }, correlation);
+        } else {
+            operations.convertAndSend(exchangeName, routingKey, message, correlation);
+        }
+    }
+
+    private void batchLoop() {
+        List<PendingPublish> batch = new ArrayList<>(batchSize);
+        while (running || !pending.isEmpty()) {
+            try {
+                PendingPublish first = pending.poll(batchIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchIntervalMs);
+                while (batch.size() < batchSize) {
+                    pending.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingPublish next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                sendBatch(batch);
+                batch = new ArrayList<>(batchSize);
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+    }
+
+    private void sendBatch(List<PendingPublish> batch) {
+        try {
+            // Todas as publicações do lote no mesmo canal, sem esperar confirms entre elas
+            rabbitTemplate.invoke(operations -> {
+                for (PendingPublish publish : batch) {
+                    send(operations, publish);
+                }
+                return null;
+            });
+            log.debug("Lote de {} mensagens publicado", batch.size());
+        } catch (Exception e) {
+            log.error("❌ Erro ao publicar lote de {} mensagens: {}", batch.size(), e.getMessage());
+            for (PendingPublish publish : batch) {
+                publish.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight == null ? 0 : maxInFlight - inFlight.availablePermits();
+    }
+
+    public long getConfirmedCount() {
+        return confirmed.sum();
+    }
+
+    public long getNackedCount() {
+        return nacked.sum();
+    }
+
+    public double getAverageConfirmLatencyMs() {
+        long count = confirmed.sum();
+        return count == 0 ? 0.0 : confirmLatencyNanos.sum() / (double) count / 1_000_000.0;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (batchSender == null) {
+            return;
+        }
+        running = false;
+        try {
+            batchSender.join(confirmTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
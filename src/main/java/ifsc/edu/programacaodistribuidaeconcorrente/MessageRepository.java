@@ -1,110 +1,929 @@
 package ifsc.edu.programacaodistribuidaeconcorrente;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.PagingState;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
+/**
+ * Persistência de mensagens no Cassandra.
+ * As mensagens ficam na tabela messages_by_sender, particionada por (sender, day_bucket)
+ * e ordenada por message_time (timeuuid) decrescente, de modo que as consultas por
+ * remetente e por intervalo de tempo leem uma única partição por dia.
+ */
 @Slf4j
 @Repository
 public class MessageRepository {
 
+    static final String TABLE = "messages_by_sender";
+    static final String LEGACY_TABLE = "messages";
+    static final String OUTBOX_TABLE = "message_outbox";
+    static final String OUTBOX_LEASE_TABLE = "message_outbox_leases";
+    static final String IDEMPOTENCY_TABLE = "message_idempotency";
+    static final String STATUS_COUNTS_TABLE = "message_status_counts";
+    static final String SENDER_STATUS_COUNTS_TABLE = "message_status_counts_by_sender";
+    // Partição única de message_status_counts com os totais de todos os remetentes
+    static final String ALL_SENDERS_SCOPE = "all";
+
+    static final String INSERT_MESSAGE = "INSERT INTO " + TABLE +
+            " (sender, day_bucket, message_time, id, content, content_blob, timestamp, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String UPDATE_STATUS = "UPDATE " + TABLE + " SET status = ?" +
+            " WHERE sender = ? AND day_bucket = ? AND message_time = ? AND id = ?";
+    // Transição para um status final: só aplica se a mensagem existe e ainda não foi finalizada
+    static final String UPDATE_STATUS_IF_OPEN = UPDATE_STATUS +
+            " IF status IN ('" + MessageStatus.SENT.value() + "', '" + MessageStatus.DELIVERED.value() + "')";
+    static final String SELECT_MESSAGES = "SELECT id, sender, content, content_blob, timestamp, status FROM " + TABLE;
+    static final String INSERT_OUTBOX = "INSERT INTO " + OUTBOX_TABLE +
+            " (shard, message_time, id, sender, content, content_blob, timestamp, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String SELECT_OUTBOX = "SELECT id, sender, content, content_blob, timestamp, status FROM " + OUTBOX_TABLE +
+            " WHERE shard = ? LIMIT ?";
+    static final String SELECT_OUTBOX_AFTER = "SELECT id, sender, content, content_blob, timestamp, status FROM " + OUTBOX_TABLE +
+            " WHERE shard = ? AND message_time > ? LIMIT ?";
+    static final String DELETE_OUTBOX = "DELETE FROM " + OUTBOX_TABLE +
+            " WHERE shard = ? AND message_time = ? AND id = ?";
+    static final String ACQUIRE_OUTBOX_LEASE = "INSERT INTO " + OUTBOX_LEASE_TABLE +
+            " (shard, owner) VALUES (?, ?) IF NOT EXISTS USING TTL ?";
+    static final String RENEW_OUTBOX_LEASE = "UPDATE " + OUTBOX_LEASE_TABLE + " USING TTL ? SET owner = ?" +
+            " WHERE shard = ? IF owner = ?";
+    static final String RELEASE_OUTBOX_LEASE = "DELETE FROM " + OUTBOX_LEASE_TABLE +
+            " WHERE shard = ? IF owner = ?";
+    static final String SELECT_LATEST_BY_SENDER = "SELECT id, sender, content, content_blob, timestamp, status FROM " + TABLE +
+            " WHERE sender = ? AND day_bucket = ? LIMIT ?";
+    static final String SELECT_RANGE_BY_SENDER = "SELECT id, sender, content, content_blob, timestamp, status FROM " + TABLE +
+            " WHERE sender = ? AND day_bucket = ? AND message_time >= minTimeuuid(?) AND message_time <= maxTimeuuid(?)";
+
+    static final String INSERT_IDEMPOTENCY_KEY = "INSERT INTO " + IDEMPOTENCY_TABLE +
+            " (sender, idempotency_key, message_id) VALUES (?, ?, ?) USING TTL ?";
+    static final String CLAIM_IDEMPOTENCY_KEY = "INSERT INTO " + IDEMPOTENCY_TABLE +
+            " (sender, idempotency_key, message_id) VALUES (?, ?, ?) IF NOT EXISTS USING TTL ?";
+    static final String DELETE_IDEMPOTENCY_KEY = "DELETE FROM " + IDEMPOTENCY_TABLE +
+            " WHERE sender = ? AND idempotency_key = ? IF message_id = ?";
+
+    static final String INCREMENT_STATUS_COUNT = "UPDATE " + STATUS_COUNTS_TABLE +
+            " SET messages = messages + ? WHERE scope = ? AND status = ?";
+    static final String INCREMENT_SENDER_STATUS_COUNT = "UPDATE " + SENDER_STATUS_COUNTS_TABLE +
+            " SET messages = messages + ? WHERE sender = ? AND status = ?";
+    static final String SELECT_STATUS_COUNTS = "SELECT status, messages FROM " + STATUS_COUNTS_TABLE +
+            " WHERE scope = ?";
+    static final String SELECT_SENDER_STATUS_COUNTS = "SELECT status, messages FROM " + SENDER_STATUS_COUNTS_TABLE +
+            " WHERE sender = ?";
+
     private final CqlSession session;
+    private final PreparedStatementRegistry statements;
+    private final PayloadCompressor payloadCompressor;
+    private final MessagingMetrics metrics;
+    private final int maxLookbackDays;
+    private final int maxRangeDays;
+    private final int outboxShards;
+    private final boolean migrateLegacy;
+    // Completo quando init() termina: schema verificado e statements preparados
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
 
     @Autowired
-    public MessageRepository(CqlSession session) {
+    public MessageRepository(CqlSession session,
+                             PreparedStatementRegistry statements,
+                             PayloadCompressor payloadCompressor,
+                             MessagingMetrics metrics,
+                             @Value("${cassandra.schema.migrate-legacy:false}") boolean migrateLegacy,
+                             @Value("${cassandra.query.max-lookback-days:30}") int maxLookbackDays,
+                             @Value("${cassandra.query.max-range-days:31}") int maxRangeDays,
+                             @Value("${outbox.shards:16}") int outboxShards) {
         this.session = session;
-        createTableIfNotExists();
+        this.statements = statements;
+        this.payloadCompressor = payloadCompressor;
+        this.metrics = metrics;
+        this.maxLookbackDays = maxLookbackDays;
+        this.maxRangeDays = maxRangeDays;
+        this.outboxShards = outboxShards;
+        this.migrateLegacy = migrateLegacy;
+    }
+
+    /**
+     * Verifica o schema, prepara os statements e, se configurado, migra a tabela legada.
+     * Chamado pelo {@link MessageServer} na inicialização (em paralelo com a do RabbitMQ),
+     * e não no construtor, para não rodar DDL e I/O durante a criação dos beans.
+     */
+    public void init() {
+        try {
+            verifySchema();
+            CompletableFuture<Void> statementsReady = prepareStatements();
+            if (migrateLegacy) {
+                migrateLegacyTable();
+            }
+            statementsReady.join();
+            ready.complete(null);
+        } catch (CompletionException e) {
+            ready.completeExceptionally(e.getCause());
+            throw new RuntimeException("Falha ao preparar statements", e.getCause());
+        } catch (RuntimeException e) {
+            ready.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Completa quando {@link #init} termina, para componentes que leem do Cassandra por conta própria.
+     */
+    public CompletableFuture<Void> whenReady() {
+        return ready.copy();
     }
 
-    private void createTableIfNotExists() {
+    private CompletableFuture<Void> prepareStatements() {
+        // Prepara uma única vez, todos em paralelo; a migração legada roda enquanto isso
+        // (as escritas dela preparam sob demanda se chegarem antes)
+        long start = System.nanoTime();
+        return statements.prepareAllAsync(List.of(
+                INSERT_MESSAGE,
+                UPDATE_STATUS,
+                UPDATE_STATUS_IF_OPEN,
+                SELECT_MESSAGES,
+                SELECT_LATEST_BY_SENDER,
+                SELECT_RANGE_BY_SENDER,
+                INSERT_OUTBOX,
+                SELECT_OUTBOX,
+                SELECT_OUTBOX_AFTER,
+                DELETE_OUTBOX,
+                ACQUIRE_OUTBOX_LEASE,
+                RENEW_OUTBOX_LEASE,
+                RELEASE_OUTBOX_LEASE,
+                INSERT_IDEMPOTENCY_KEY,
+                CLAIM_IDEMPOTENCY_KEY,
+                DELETE_IDEMPOTENCY_KEY,
+                INCREMENT_STATUS_COUNT,
+                INCREMENT_SENDER_STATUS_COUNT,
+                SELECT_STATUS_COUNTS,
+                SELECT_SENDER_STATUS_COUNTS
+        )).thenRun(() -> log.info("✅ {} statements preparados no Cassandra em {} ms",
+                statements.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+
+    /**
+     * Verifica as tabelas pelos metadados que o driver já carregou na conexão: com o schema em dia,
+     * nenhuma ida ao Cassandra. Só executa o DDL das tabelas e colunas que não aparecem nos metadados.
+     */
+    private void verifySchema() {
         try {
-            // Verifica se a tabela já existe
-            boolean tableExists = session.execute(
-                    "SELECT table_name FROM system_schema.tables " +
-                            "WHERE keyspace_name = 'message_system' AND table_name = 'messages'"
-            ).one() != null;
-
-            if (!tableExists) {
-                String createTableQuery = "CREATE TABLE messages (" +
-                        "id UUID PRIMARY KEY, " +
-                        "sender TEXT, " +
-                        "content TEXT, " +
-                        "timestamp BIGINT, " +
-                        "status TEXT)";
-
-                session.execute(createTableQuery);
-                log.info("✅ Tabela 'messages' criada no Cassandra");
-            } else {
-                // Verifica se a estrutura está correta
-                verifyTableStructure();
-                log.info("✅ Tabela 'messages' já existe");
+            Optional<KeyspaceMetadata> keyspace = session.getKeyspace()
+                    .flatMap(name -> session.getMetadata().getKeyspace(name));
+            Map<String, String> tables = tableDefinitions();
+            int created = 0;
+            for (Map.Entry<String, String> table : tables.entrySet()) {
+                if (keyspace.flatMap(metadata -> metadata.getTable(table.getKey())).isEmpty()) {
+                    session.execute(table.getValue());
+                    log.info("✅ Tabela '" + table.getKey() + "' verificada/criada no Cassandra");
+                    created++;
+                }
             }
+
+            // Tabelas criadas antes da compressão de conteúdo não têm a coluna content_blob
+            addColumnIfMissing(keyspace, TABLE, "content_blob", "BLOB");
+            addColumnIfMissing(keyspace, OUTBOX_TABLE, "content_blob", "BLOB");
+            log.info("✅ Schema verificado ({} de {} tabelas criadas)", created, tables.size());
         } catch (Exception e) {
             log.error("❌ Erro ao criar/verificar tabela no Cassandra: " + e.getMessage());
             throw new RuntimeException("Falha ao criar tabela", e);
         }
     }
 
-    private void verifyTableStructure() {
+    private static Map<String, String> tableDefinitions() {
+        Map<String, String> tables = new LinkedHashMap<>();
+        tables.put(TABLE, "CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                "sender TEXT, " +
+                "day_bucket DATE, " +
+                "message_time TIMEUUID, " +
+                "id UUID, " +
+                "content TEXT, " +
+                "content_blob BLOB, " +
+                "timestamp BIGINT, " +
+                "status TEXT, " +
+                "PRIMARY KEY ((sender, day_bucket), message_time, id)) " +
+                "WITH CLUSTERING ORDER BY (message_time DESC, id ASC)");
+
+        // Outbox: uma partição por shard, entradas mais antigas primeiro.
+        // gc_grace curto porque as linhas são apagadas logo após a publicação.
+        tables.put(OUTBOX_TABLE, "CREATE TABLE IF NOT EXISTS " + OUTBOX_TABLE + " (" +
+                "shard INT, " +
+                "message_time TIMEUUID, " +
+                "id UUID, " +
+                "sender TEXT, " +
+                "content TEXT, " +
+                "content_blob BLOB, " +
+                "timestamp BIGINT, " +
+                "status TEXT, " +
+                "PRIMARY KEY ((shard), message_time, id)) " +
+                "WITH CLUSTERING ORDER BY (message_time ASC, id ASC) AND gc_grace_seconds = 3600");
+
+        // Posse dos shards do outbox entre instâncias: a linha expira pelo TTL se o dono parar de renovar
+        tables.put(OUTBOX_LEASE_TABLE, "CREATE TABLE IF NOT EXISTS " + OUTBOX_LEASE_TABLE + " (" +
+                "shard INT PRIMARY KEY, " +
+                "owner UUID)");
+
+        // Chaves de idempotência enviadas pelos clientes; as linhas expiram pelo TTL da escrita
+        tables.put(IDEMPOTENCY_TABLE, "CREATE TABLE IF NOT EXISTS " + IDEMPOTENCY_TABLE + " (" +
+                "sender TEXT, " +
+                "idempotency_key TEXT, " +
+                "message_id UUID, " +
+                "PRIMARY KEY ((sender, idempotency_key)))");
+
+        // Contadores de mensagens por status: totais (partição 'all') e por remetente
+        tables.put(STATUS_COUNTS_TABLE, "CREATE TABLE IF NOT EXISTS " + STATUS_COUNTS_TABLE + " (" +
+                "scope TEXT, " +
+                "status TEXT, " +
+                "messages COUNTER, " +
+                "PRIMARY KEY ((scope), status))");
+
+        tables.put(SENDER_STATUS_COUNTS_TABLE, "CREATE TABLE IF NOT EXISTS " + SENDER_STATUS_COUNTS_TABLE + " (" +
+                "sender TEXT, " +
+                "status TEXT, " +
+                "messages COUNTER, " +
+                "PRIMARY KEY ((sender), status))");
+        return tables;
+    }
+
+    // Tabela ausente dos metadados acabou de ser criada, já com a coluna
+    private void addColumnIfMissing(Optional<KeyspaceMetadata> keyspace, String table, String column, String type) {
+        Optional<TableMetadata> metadata = keyspace.flatMap(k -> k.getTable(table));
+        if (metadata.isPresent() && metadata.get().getColumn(column).isEmpty()) {
+            session.execute("ALTER TABLE " + table + " ADD " + column + " " + type);
+            log.info("✅ Coluna '" + column + "' adicionada à tabela '" + table + "'");
+        }
+    }
+
+    private boolean legacyTableExists() {
+        String keyspace = session.getKeyspace().map(k -> k.asInternal()).orElse("message_system");
+        return session.execute(
+                "SELECT table_name FROM system_schema.tables WHERE keyspace_name = ? AND table_name = ?",
+                keyspace, LEGACY_TABLE
+        ).one() != null;
+    }
+
+    /**
+     * Copia as linhas da tabela antiga (id UUID PRIMARY KEY) para messages_by_sender.
+     * A leitura é paginada pelo driver e as escritas são assíncronas com concorrência limitada.
+     * A operação é idempotente; a tabela antiga não é removida. Se alguma linha não for copiada,
+     * a migração falha (e pode ser repetida) em vez de ser dada como concluída.
+     */
+    private void migrateLegacyTable() {
+        if (!legacyTableExists()) {
+            log.info("Tabela legada '" + LEGACY_TABLE + "' não encontrada, nada a migrar");
+            return;
+        }
+        log.info("=== Migrando tabela '" + LEGACY_TABLE + "' para '" + TABLE + "' ===");
+        Semaphore inFlight = new Semaphore(64);
+        // Contados no callback: só escritas concluídas entram em migrated
+        LongAdder migrated = new LongAdder();
+        LongAdder failed = new LongAdder();
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
         try {
-            // Tenta uma operação simples para verificar a estrutura
-            session.execute("SELECT id, sender, content, timestamp, status FROM messages LIMIT 1");
+            ResultSet resultSet = session.execute(
+                    "SELECT id, sender, content, timestamp, status FROM " + LEGACY_TABLE);
+            for (Row row : resultSet) {
+                Message message = toMessage(row);
+                if (message.getSender() == null) {
+                    message.setSender("Anônimo");
+                }
+                inFlight.acquire();
+                saveMessageAsync(message).whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        migrated.increment();
+                    } else {
+                        failed.increment();
+                        firstError.compareAndSet(null, error);
+                    }
+                    inFlight.release();
+                });
+            }
+            inFlight.acquire(64);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Migração interrompida", e);
         } catch (Exception e) {
-            log.error("Estrutura da tabela incorreta. Recriando tabela...");
-            session.execute("DROP TABLE IF EXISTS messages");
-            createTableIfNotExists();
+            log.error("❌ Erro ao migrar tabela legada: " + e.getMessage());
+            throw new RuntimeException("Falha na migração da tabela legada", e);
+        }
+        if (failed.sum() > 0) {
+            log.error("❌ Migração incompleta: {} mensagens copiadas, {} falharam (primeiro erro: {})",
+                    migrated.sum(), failed.sum(), firstError.get().getMessage());
+            throw new RuntimeException("Falha na migração da tabela legada: " + failed.sum() + " mensagens não copiadas",
+                    firstError.get());
         }
+        log.info("✅ Migração concluída: {} mensagens copiadas", migrated.sum());
     }
 
     public void saveMessage(Message message) {
+        long start = metrics.start(MessagingMetrics.STAGE_WRITE);
         try {
-            String insertQuery = "INSERT INTO messages (id, sender, content, timestamp, status) " +
-                    "VALUES (?, ?, ?, ?, ?)";
-
-            PreparedStatement prepared = session.prepare(insertQuery);
-            BoundStatement bound = prepared.bind(
-                    message.getId(),
-                    message.getSender(),
-                    message.getContent(),
-                    message.getTimestamp(),
-                    message.getStatus()
-            );
-
-            session.execute(bound);
+            session.execute(bindInsert(message));
+            metrics.record(MessagingMetrics.STAGE_WRITE, start, true);
             log.debug("Mensagem salva no Cassandra: {}", message.getId());
         } catch (Exception e) {
+            metrics.record(MessagingMetrics.STAGE_WRITE, start, false);
             log.error("Erro ao salvar mensagem no Cassandra: " + e.getMessage());
             throw new RuntimeException("Falha ao salvar mensagem", e);
         }
     }
 
-    public List<Message> getMessages() {
-        List<Message> messages = new ArrayList<>();
+    /**
+     * Versão não bloqueante de {@link #saveMessage(Message)}: a escrita é enviada com
+     * executeAsync e o chamador é notificado pelo CompletionStage, sem segurar a thread.
+     */
+    public CompletionStage<Void> saveMessageAsync(Message message) {
+        BoundStatement bound;
         try {
-            ResultSet resultSet = session.execute("SELECT id, sender, content, timestamp, status FROM messages");
+            bound = bindInsert(message);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Falha ao salvar mensagem", e));
+        }
+        long start = metrics.start(MessagingMetrics.STAGE_WRITE);
+        return metrics.recordAsync(MessagingMetrics.STAGE_WRITE, start, session.executeAsync(bound))
+                .handle((resultSet, error) -> {
+                    if (error != null) {
+                        log.error("Erro ao salvar mensagem no Cassandra: " + error.getMessage());
+                        throw new RuntimeException("Falha ao salvar mensagem", error);
+                    }
+                    log.debug("Mensagem salva no Cassandra: {}", message.getId());
+                    return null;
+                });
+    }
 
-            for (Row row : resultSet) {
-                messages.add(new Message(
-                        row.getUuid("id"),
-                        row.getString("sender"),
-                        row.getString("content"),
-                        row.getLong("timestamp"),
-                        row.getString("status")
-                ));
+    /**
+     * Persiste um lote de mensagens. Mensagens da mesma partição vão juntas em um
+     * BATCH UNLOGGED (um único coordenador, uma única mutação); partições isoladas
+     * são escritas em paralelo com executeAsync.
+     */
+    public CompletionStage<Void> saveBatchAsync(List<Message> messages) {
+        Map<Object, List<Message>> byPartition = new LinkedHashMap<>();
+        for (Message message : messages) {
+            byPartition.computeIfAbsent(partitionKey(message), key -> new ArrayList<>()).add(message);
+        }
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>(byPartition.size());
+        for (List<Message> partition : byPartition.values()) {
+            if (partition.size() == 1) {
+                writes.add(saveMessageAsync(partition.get(0)).toCompletableFuture());
+                continue;
+            }
+            BatchStatementBuilder batch = BatchStatement.builder(DefaultBatchType.UNLOGGED)
+                .setExecutionProfileName(PreparedStatementRegistry.WRITE_PROFILE);
+            long timestamp = Long.MAX_VALUE;
+            for (Message message : partition) {
+                batch.addStatement(bindInsert(message));
+                timestamp = Math.min(timestamp, writeTimestamp(message, MessageStatus.SENT));
             }
-            log.debug("Recuperadas {} mensagens do Cassandra", messages.size());
+            // O timestamp dos statements internos é ignorado no batch: vale o do batch, o menor da partição
+            batch.setQueryTimestamp(timestamp);
+            long start = metrics.start(MessagingMetrics.STAGE_BATCH_WRITE);
+            writes.add(metrics.recordAsync(MessagingMetrics.STAGE_BATCH_WRITE, start, session.executeAsync(batch.build()))
+                    .thenApply(resultSet -> (Void) null)
+                    .toCompletableFuture());
+        }
+
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        log.error("Erro ao salvar lote de {} mensagens no Cassandra: {}", messages.size(), error.getMessage());
+                    } else {
+                        log.debug("Lote de {} mensagens salvo em {} partições", messages.size(), byPartition.size());
+                    }
+                });
+    }
+
+    /**
+     * Grava a mensagem e a sua entrada no outbox em um BATCH LOGGED: ou as duas
+     * escritas são aplicadas, ou nenhuma. A publicação no RabbitMQ fica a cargo do {@link OutboxRelay}.
+     */
+    public CompletionStage<Void> saveWithOutboxAsync(Message message) {
+        BatchStatement batch;
+        try {
+            batch = outboxBatch(message);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Falha ao salvar mensagem", e));
+        }
+        long start = metrics.start(MessagingMetrics.STAGE_BATCH_WRITE);
+        return metrics.recordAsync(MessagingMetrics.STAGE_BATCH_WRITE, start, session.executeAsync(batch))
+                .handle((resultSet, error) -> {
+                    if (error != null) {
+                        log.error("Erro ao salvar mensagem no Cassandra: " + error.getMessage());
+                        throw new RuntimeException("Falha ao salvar mensagem", error);
+                    }
+                    log.debug("Mensagem e entrada de outbox salvas no Cassandra: {}", message.getId());
+                    return null;
+                });
+    }
+
+    private BatchStatement outboxBatch(Message message) {
+        StoredContent content = storedContent(message);
+        return BatchStatement.newInstance(DefaultBatchType.LOGGED,
+                        bindInsert(message, content),
+                        bindOutboxInsert(message, content))
+                .setExecutionProfileName(PreparedStatementRegistry.WRITE_PROFILE)
+                .setQueryTimestamp(writeTimestamp(message, MessageStatus.SENT));
+    }
+
+    /**
+     * Registra a chave de idempotência com lightweight transaction (INSERT IF NOT EXISTS).
+     * Retorna null se a chave foi registrada agora, ou o id da mensagem já associada a ela.
+     */
+    public UUID claimIdempotencyKey(String sender, String key, UUID messageId, int ttlSeconds) {
+        long start = metrics.start(MessagingMetrics.STAGE_LWT);
+        try {
+            ResultSet resultSet = session.execute(statements.get(CLAIM_IDEMPOTENCY_KEY)
+                    .bind(sender, key, messageId, ttlSeconds));
+            metrics.record(MessagingMetrics.STAGE_LWT, start, true);
+            if (resultSet.wasApplied()) {
+                return null;
+            }
+            Row existing = resultSet.one();
+            return existing == null ? null : existing.getUuid("message_id");
+        } catch (Exception e) {
+            metrics.record(MessagingMetrics.STAGE_LWT, start, false);
+            log.error("Erro ao registrar chave de idempotência: " + e.getMessage());
+            throw new RuntimeException("Falha ao registrar chave de idempotência", e);
+        }
+    }
+
+    /**
+     * Versão não bloqueante de {@link #claimIdempotencyKey}: completa com null ou com o id já associado à chave.
+     */
+    public CompletionStage<UUID> claimIdempotencyKeyAsync(String sender, String key, UUID messageId, int ttlSeconds) {
+        long start = metrics.start(MessagingMetrics.STAGE_LWT);
+        return metrics.recordAsync(MessagingMetrics.STAGE_LWT, start, session.executeAsync(
+                        statements.get(CLAIM_IDEMPOTENCY_KEY).bind(sender, key, messageId, ttlSeconds)))
+                .handle((resultSet, error) -> {
+                    if (error != null) {
+                        log.error("Erro ao registrar chave de idempotência: " + error.getMessage());
+                        throw new RuntimeException("Falha ao registrar chave de idempotência", error);
+                    }
+                    if (resultSet.wasApplied()) {
+                        return null;
+                    }
+                    Row existing = resultSet.one();
+                    return existing == null ? null : existing.getUuid("message_id");
+                });
+    }
+
+    /**
+     * Grava a chave sem LWT, depois do envio, para que retries verificados no Cassandra a encontrem.
+     */
+    public CompletionStage<Void> saveIdempotencyKeyAsync(String sender, String key, UUID messageId, int ttlSeconds) {
+        long start = metrics.start(MessagingMetrics.STAGE_WRITE);
+        return metrics.recordAsync(MessagingMetrics.STAGE_WRITE, start, session.executeAsync(
+                        statements.get(INSERT_IDEMPOTENCY_KEY).bind(sender, key, messageId, ttlSeconds)))
+                .thenApply(resultSet -> (Void) null);
+    }
+
+    /**
+     * Remove a chave só se ela ainda pertencer a messageId (LWT), sem apagar a reserva de outro envio.
+     */
+    public CompletionStage<Void> deleteIdempotencyKeyAsync(String sender, String key, UUID messageId) {
+        long start = metrics.start(MessagingMetrics.STAGE_LWT);
+        return metrics.recordAsync(MessagingMetrics.STAGE_LWT, start, session.executeAsync(
+                        statements.get(DELETE_IDEMPOTENCY_KEY).bind(sender, key, messageId)))
+                .thenApply(resultSet -> (Void) null);
+    }
+
+    private BoundStatement bindOutboxInsert(Message message, StoredContent content) {
+        return statements.get(INSERT_OUTBOX).bind(
+                outboxShard(message),
+                messageTime(message),
+                message.getId(),
+                message.getSender(),
+                content.text(),
+                content.blob(),
+                message.getTimestamp(),
+                message.getStatus()
+        );
+    }
+
+    // Pelo remetente, como nas filas: um único dono relaya as entradas do remetente na ordem em que foram gravadas
+    int outboxShard(Message message) {
+        return QueueSharding.shardOf(message.getSender(), outboxShards);
+    }
+
+    public int getOutboxShards() {
+        return outboxShards;
+    }
+
+    /**
+     * Tenta assumir o shard do outbox para owner (LWT). Retorna true se owner passou a ser o dono.
+     */
+    public boolean acquireOutboxLease(int shard, UUID owner, int ttlSeconds) {
+        return applied(ACQUIRE_OUTBOX_LEASE, statements.get(ACQUIRE_OUTBOX_LEASE).bind(shard, owner, ttlSeconds));
+    }
+
+    /**
+     * Renova o TTL do shard se owner ainda for o dono. false: a posse expirou ou passou a outra instância.
+     */
+    public boolean renewOutboxLease(int shard, UUID owner, int ttlSeconds) {
+        return applied(RENEW_OUTBOX_LEASE, statements.get(RENEW_OUTBOX_LEASE).bind(ttlSeconds, owner, shard, owner));
+    }
+
+    public CompletionStage<Void> releaseOutboxLeaseAsync(int shard, UUID owner) {
+        long start = metrics.start(MessagingMetrics.STAGE_LWT);
+        return metrics.recordAsync(MessagingMetrics.STAGE_LWT, start, session.executeAsync(
+                        statements.get(RELEASE_OUTBOX_LEASE).bind(shard, owner)))
+                .thenApply(resultSet -> (Void) null);
+    }
+
+    private boolean applied(String query, BoundStatement bound) {
+        long start = metrics.start(MessagingMetrics.STAGE_LWT);
+        try {
+            boolean applied = session.execute(bound).wasApplied();
+            metrics.record(MessagingMetrics.STAGE_LWT, start, true);
+            return applied;
+        } catch (Exception e) {
+            metrics.record(MessagingMetrics.STAGE_LWT, start, false);
+            throw new RuntimeException("Falha na LWT " + query, e);
+        }
+    }
+
+    /**
+     * Entradas pendentes de um shard do outbox, em ordem de criação.
+     * Com {@code after} informado a leitura começa depois dessa posição, pulando
+     * as linhas já apagadas (tombstones) no início da partição.
+     */
+    public List<Message> getOutboxEntries(int shard, UUID after, int limit) {
+        BoundStatement bound = after == null
+                ? statements.get(SELECT_OUTBOX).bind(shard, limit)
+                : statements.get(SELECT_OUTBOX_AFTER).bind(shard, after, limit);
+        List<Message> entries = new ArrayList<>();
+        for (Row row : session.execute(bound)) {
+            entries.add(toMessage(row));
+        }
+        return entries;
+    }
+
+    /**
+     * Remove do outbox as entradas já publicadas. Todas pertencem à mesma partição,
+     * então vão em um único BATCH UNLOGGED.
+     */
+    public CompletionStage<Void> deleteOutboxEntriesAsync(int shard, List<Message> entries) {
+        if (entries.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        BatchStatementBuilder batch = BatchStatement.builder(DefaultBatchType.UNLOGGED)
+                .setExecutionProfileName(PreparedStatementRegistry.WRITE_PROFILE);
+        for (Message entry : entries) {
+            batch.addStatement(statements.get(DELETE_OUTBOX).bind(shard, messageTime(entry), entry.getId()));
+        }
+        return session.executeAsync(batch.build()).thenApply(resultSet -> (Void) null);
+    }
+
+    /**
+     * Atualiza apenas a coluna status da mensagem, endereçando a linha pela chave completa
+     * (sender, day_bucket, message_time, id) sem leitura prévia. A escrita usa o timestamp
+     * de {@link #writeTimestamp}: uma reentrega não desfaz um status posterior.
+     */
+    public CompletionStage<Void> updateStatusAsync(Message message, MessageStatus status) {
+        BoundStatement bound;
+        try {
+            bound = statements.get(UPDATE_STATUS).bind(
+                    status.value(),
+                    message.getSender(),
+                    dayBucket(message.getTimestamp()),
+                    messageTime(message),
+                    message.getId()
+            ).setQueryTimestamp(writeTimestamp(message, status));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Falha ao atualizar status", e));
+        }
+        long start = metrics.start(MessagingMetrics.STAGE_WRITE);
+        return metrics.recordAsync(MessagingMetrics.STAGE_WRITE, start, session.executeAsync(bound))
+                .handle((resultSet, error) -> {
+                    if (error != null) {
+                        log.error("Erro ao atualizar status da mensagem {}: {}", message.getId(), error.getMessage());
+                        throw new RuntimeException("Falha ao atualizar status", error);
+                    }
+                    log.debug("Status da mensagem {} atualizado para {}", message.getId(), status.value());
+                    return null;
+                });
+    }
+
+    /**
+     * Resultado de {@link #finishStatus}: applied, ou o status atual (null se a mensagem não existe).
+     */
+    public record StatusUpdate(boolean applied, String currentStatus) {
+    }
+
+    /**
+     * Leva a mensagem a um status final (acknowledged ou failed) com lightweight transaction:
+     * só aplica se ela existe e ainda está em sent ou delivered. O id precisa ser timeuuid,
+     * de onde vem o timestamp que localiza a partição.
+     */
+    public StatusUpdate finishStatus(String sender, UUID id, MessageStatus status) {
+        if (!status.isTerminal()) {
+            throw new IllegalArgumentException("status final deve ser acknowledged ou failed");
+        }
+        if (id.version() != 1) {
+            throw new IllegalArgumentException("id não é um timeuuid");
+        }
+        long timestamp = Uuids.unixTimestamp(id);
+        long start = metrics.start(MessagingMetrics.STAGE_LWT);
+        try {
+            ResultSet resultSet = session.execute(statements.get(UPDATE_STATUS_IF_OPEN)
+                    .bind(status.value(), sender, dayBucket(timestamp), id, id));
+            metrics.record(MessagingMetrics.STAGE_LWT, start, true);
+            if (resultSet.wasApplied()) {
+                return new StatusUpdate(true, status.value());
+            }
+            Row current = resultSet.one();
+            return new StatusUpdate(false, current == null ? null : current.getString("status"));
+        } catch (Exception e) {
+            metrics.record(MessagingMetrics.STAGE_LWT, start, false);
+            log.error("Erro ao atualizar status da mensagem {}: {}", id, e.getMessage());
+            throw new RuntimeException("Falha ao atualizar status", e);
+        }
+    }
+
+    /**
+     * Soma os incrementos às tabelas counter de status: totais com sender null, ou do remetente.
+     * Todos os incrementos vão na mesma partição, em um único BATCH COUNTER.
+     */
+    public CompletionStage<Void> incrementStatusCountsAsync(String sender, Map<MessageStatus, Long> deltas) {
+        BatchStatementBuilder batch = BatchStatement.builder(DefaultBatchType.COUNTER)
+                .setExecutionProfileName(PreparedStatementRegistry.WRITE_PROFILE);
+        for (Map.Entry<MessageStatus, Long> delta : deltas.entrySet()) {
+            batch.addStatement(sender == null
+                    ? statements.get(INCREMENT_STATUS_COUNT).bind(delta.getValue(), ALL_SENDERS_SCOPE, delta.getKey().value())
+                    : statements.get(INCREMENT_SENDER_STATUS_COUNT).bind(delta.getValue(), sender, delta.getKey().value()));
+        }
+        long start = metrics.start(MessagingMetrics.STAGE_WRITE);
+        return metrics.recordAsync(MessagingMetrics.STAGE_WRITE, start, session.executeAsync(batch.build()))
+                .thenApply(resultSet -> (Void) null);
+    }
+
+    /**
+     * Contadores gravados por status: totais com sender null, ou do remetente. Lê uma única partição.
+     */
+    public Map<String, Long> getStatusCounts(String sender) {
+        BoundStatement bound = sender == null
+                ? statements.get(SELECT_STATUS_COUNTS).bind(ALL_SENDERS_SCOPE)
+                : statements.get(SELECT_SENDER_STATUS_COUNTS).bind(sender);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Row row : execute(bound)) {
+            counts.put(row.getString("status"), row.getLong("messages"));
+        }
+        return counts;
+    }
+
+    // Chave de partição da tabela messages_by_sender
+    private record PartitionKey(String sender, LocalDate dayBucket) {
+    }
+
+    private static PartitionKey partitionKey(Message message) {
+        return new PartitionKey(message.getSender(), dayBucket(message.getTimestamp()));
+    }
+
+    /**
+     * Timestamp de escrita (micros) da mensagem no status: o instante de criação mais a posição
+     * do status no ciclo. Como o Cassandra resolve escritas concorrentes pelo maior timestamp,
+     * o INSERT atrasado (write-behind) não desfaz o delivered e uma reentrega não desfaz o status
+     * final, gravado pela LWT com o horário atual.
+     */
+    static long writeTimestamp(Message message, MessageStatus status) {
+        return message.getTimestamp() * 1000 + status.ordinal();
+    }
+
+    static LocalDate dayBucket(long timestamp) {
+        return Instant.ofEpochMilli(timestamp).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    /**
+     * Coluna de clustering da mensagem. Mensagens novas usam um id timeuuid (versão 1),
+     * que já é o próprio message_time; mensagens migradas usam o início do milissegundo.
+     */
+    static UUID messageTime(Message message) {
+        UUID id = message.getId();
+        return id.version() == 1 ? id : Uuids.startOf(message.getTimestamp());
+    }
+
+    /**
+     * Conteúdo como é gravado: texto puro abaixo do limiar de compressão,
+     * ou content = null e content_blob com o texto comprimido.
+     */
+    record StoredContent(String text, ByteBuffer blob) {
+    }
+
+    private StoredContent storedContent(Message message) {
+        return storedContent(payloadCompressor, message);
+    }
+
+    static StoredContent storedContent(PayloadCompressor payloadCompressor, Message message) {
+        byte[] compressed = payloadCompressor.compressText(message.getContent());
+        return compressed == null
+                ? new StoredContent(message.getContent(), null)
+                : new StoredContent(null, ByteBuffer.wrap(compressed));
+    }
+
+    private BoundStatement bindInsert(Message message) {
+        return bindInsert(message, storedContent(message));
+    }
+
+    private BoundStatement bindInsert(Message message, StoredContent content) {
+        return bindInsert(statements.get(INSERT_MESSAGE), message, content);
+    }
+
+    static BoundStatement bindInsert(PreparedStatement prepared, Message message, StoredContent content) {
+        BoundStatement bound = prepared.bind(
+                message.getSender(),
+                dayBucket(message.getTimestamp()),
+                messageTime(message),
+                message.getId(),
+                content.text(),
+                content.blob(),
+                message.getTimestamp(),
+                message.getStatus()
+        );
+        return bound.setQueryTimestamp(writeTimestamp(message, MessageStatus.SENT));
+    }
+
+    /**
+     * Página de mensagens e cursor opaco para a próxima página (null na última página).
+     */
+    public record MessagePage(List<Message> messages, String nextCursor) {
+    }
+
+    /**
+     * Lê uma única página de até {@code limit} mensagens usando o paging state do driver.
+     * O cursor é o paging state serializado; só é aceito para a mesma query que o gerou.
+     */
+    public MessagePage getMessagesPage(int limit, String cursor) {
+        BoundStatement bound = statements.get(SELECT_MESSAGES).bind().setPageSize(limit);
+        if (cursor != null && !cursor.isEmpty()) {
+            PagingState pagingState;
+            try {
+                pagingState = PagingState.fromString(cursor);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Cursor inválido");
+            }
+            bound = bound.setPagingState(pagingState);
+        }
+
+        try {
+            ResultSet resultSet = execute(bound);
+            // Consome apenas as linhas já recebidas, sem disparar a busca da próxima página
+            int available = resultSet.getAvailableWithoutFetching();
+            List<Message> messages = new ArrayList<>(available);
+            for (int i = 0; i < available; i++) {
+                messages.add(toMessage(resultSet.one()));
+            }
+            PagingState next = resultSet.getExecutionInfo().getSafePagingState();
+            log.debug("Recuperada página com {} mensagens do Cassandra", messages.size());
+            return new MessagePage(messages, next == null ? null : next.toString());
+        } catch (Exception e) {
+            log.error("Erro ao recuperar mensagens do Cassandra: " + e.getMessage());
+            throw new RuntimeException("Falha ao recuperar mensagens", e);
+        }
+    }
+
+    /**
+     * Percorre todas as mensagens página a página, entregando cada linha ao {@code onMessage}
+     * e chamando {@code onPageEnd} ao fim de cada página. Só uma página fica em memória.
+     */
+    public long forEachMessage(int pageSize, Consumer<Message> onMessage, Runnable onPageEnd) {
+        long count = 0;
+        ResultSet resultSet = session.execute(statements.get(SELECT_MESSAGES).bind().setPageSize(pageSize));
+        while (true) {
+            int available = resultSet.getAvailableWithoutFetching();
+            for (int i = 0; i < available; i++) {
+                onMessage.accept(toMessage(resultSet.one()));
+            }
+            count += available;
+            onPageEnd.run();
+            if (resultSet.isFullyFetched()) {
+                break;
+            }
+            // Busca a próxima página de forma bloqueante
+            if (!resultSet.iterator().hasNext()) {
+                break;
+            }
+        }
+        log.debug("Transmitidas {} mensagens do Cassandra", count);
+        return count;
+    }
+
+    /**
+     * Últimas {@code limit} mensagens do remetente, da mais recente para a mais antiga.
+     * Lê uma partição por dia, começando por hoje, até completar o limite ou atingir
+     * cassandra.query.max-lookback-days.
+     */
+    public List<Message> getLatestMessagesBySender(String sender, int limit) {
+        List<Message> messages = new ArrayList<>(Math.min(limit, 1000));
+        try {
+            LocalDate bucket = dayBucket(System.currentTimeMillis());
+            for (int day = 0; day <= maxLookbackDays && messages.size() < limit; day++) {
+                ResultSet resultSet = execute(statements.get(SELECT_LATEST_BY_SENDER)
+                        .bind(sender, bucket.minusDays(day), limit - messages.size()));
+                for (Row row : resultSet) {
+                    messages.add(toMessage(row));
+                }
+            }
+            log.debug("Recuperadas {} mensagens recentes de {}", messages.size(), sender);
         } catch (Exception e) {
             log.error("Erro ao recuperar mensagens do Cassandra: " + e.getMessage());
             throw new RuntimeException("Falha ao recuperar mensagens", e);
         }
         return messages;
     }
-}
\ No newline at end of file
+
+    // Leitura síncrona medida como STAGE_READ, com sucesso ou falha
+    private ResultSet execute(BoundStatement bound) {
+        long start = metrics.start(MessagingMetrics.STAGE_READ);
+        try {
+            ResultSet resultSet = session.execute(bound);
+            metrics.record(MessagingMetrics.STAGE_READ, start, true);
+            return resultSet;
+        } catch (RuntimeException e) {
+            metrics.record(MessagingMetrics.STAGE_READ, start, false);
+            throw e;
+        }
+    }
+
+    /**
+     * Mensagens do remetente entre {@code from} e {@code to} (epoch millis, inclusivos),
+     * da mais recente para a mais antiga, limitadas a {@code limit}.
+     */
+    public List<Message> getMessagesInRange(String sender, long from, long to, int limit) {
+        if (from > to) {
+            throw new IllegalArgumentException("Intervalo inválido: from > to");
+        }
+        LocalDate first = dayBucket(from);
+        LocalDate last = dayBucket(to);
+        if (ChronoUnit.DAYS.between(first, last) >= maxRangeDays) {
+            throw new IllegalArgumentException("Intervalo maior que " + maxRangeDays + " dias");
+        }
+
+        List<Message> messages = new ArrayList<>(Math.min(limit, 1000));
+        try {
+            for (LocalDate bucket = last; !bucket.isBefore(first) && messages.size() < limit; bucket = bucket.minusDays(1)) {
+                BoundStatement bound = statements.get(SELECT_RANGE_BY_SENDER)
+                        .bind(sender, bucket, Instant.ofEpochMilli(from), Instant.ofEpochMilli(to));
+                ResultSet resultSet = execute(bound);
+                for (Row row : resultSet) {
+                    messages.add(toMessage(row));
+                    if (messages.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+            log.debug("Recuperadas {} mensagens de {} no intervalo", messages.size(), sender);
+        } catch (Exception e) {
+            log.error("Erro ao recuperar mensagens do Cassandra: " + e.getMessage());
+            throw new RuntimeException("Falha ao recuperar mensagens", e);
+        }
+        return messages;
+    }
+
+    private Message toMessage(Row row) {
+        String content = row.getString("content");
+        // Descompressão transparente do conteúdo gravado em content_blob
+        if (content == null && row.getColumnDefinitions().contains("content_blob")) {
+            ByteBuffer blob = row.getByteBuffer("content_blob");
+            if (blob != null) {
+                byte[] data = new byte[blob.remaining()];
+                blob.duplicate().get(data);
+                content = payloadCompressor.decompressText(data);
+            }
+        }
+        return new Message(
+                row.getUuid("id"),
+                row.getString("sender"),
+                content,
+                row.getLong("timestamp"),
+                row.getString("status")
+        );
+    }
+}
@@ -0,0 +1,298 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Retentativas com atraso e reprocessamento da fila de mensagens mortas (topologia em {@link RetryTopology}).
+ *
+ * Uma mensagem cuja gravação falhou é republicada na fila de atraso da próxima tentativa, com o
+ * número da tentativa no header retry-attempt, e o consumidor confirma a original. Esgotadas as
+ * tentativas, o consumidor a rejeita sem requeue e o broker a move para a DLQ com o header intacto.
+ * Com o Cassandra fora do ar, o consumo passa a esvaziar a fila principal nas filas de atraso em
+ * vez de reentregar a mesma mensagem em laço, e nada é descartado.
+ */
+@Slf4j
+@Component
+public class MessageRetrier {
+
+    private final RetryTopology topology;
+    private final MessagePublisher messagePublisher;
+    private final RabbitTemplate rabbitTemplate;
+    private final RabbitAdmin rabbitAdmin;
+    private final MessageConverter messageConverter;
+    private final PayloadCompressor payloadCompressor;
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+    // Um reprocessamento da DLQ por vez
+    private final ReentrantLock replayLock = new ReentrantLock();
+
+    @Value("${retry.replay.batch-size:100}")
+    private int replayBatchSize;
+
+    @Value("${retry.replay.confirm-timeout-ms:10000}")
+    private long replayConfirmTimeoutMs;
+
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder retryFailed = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+
+    /**
+     * Resultado de {@link #replay}: mensagens devolvidas à fila principal, que falharam
+     * (continuam na DLQ) e que ainda restam na DLQ.
+     */
+    public record ReplayResult(int replayed, int failed, long remaining) {
+    }
+
+    /**
+     * Mensagem na DLQ: tentativas feitas e motivo informado pelo broker (rejected, expired...).
+     */
+    @JsonPropertyOrder({"id", "sender", "attempts", "reason", "routing_key"})
+    public record DeadLetter(String id, String sender, int attempts, String reason,
+                             @JsonProperty("routing_key") String routingKey) {
+    }
+
+    public MessageRetrier(RetryTopology topology,
+                          MessagePublisher messagePublisher,
+                          RabbitTemplate rabbitTemplate,
+                          RabbitAdmin rabbitAdmin,
+                          MessageConverter messageConverter,
+                          PayloadCompressor payloadCompressor) {
+        this.topology = topology;
+        this.messagePublisher = messagePublisher;
+        this.rabbitTemplate = rabbitTemplate;
+        this.rabbitAdmin = rabbitAdmin;
+        this.messageConverter = messageConverter;
+        this.payloadCompressor = payloadCompressor;
+    }
+
+    public boolean isEnabled() {
+        return topology.isEnabled();
+    }
+
+    /**
+     * Agenda a próxima tentativa da mensagem recebida. O future completa com true quando o broker
+     * confirma a republicação na fila de atraso, com false quando as tentativas já se esgotaram
+     * (a mensagem deve ir para a DLQ) e falha se a republicação não for confirmada.
+     */
+    public CompletableFuture<Boolean> retry(org.springframework.amqp.core.Message amqpMessage) {
+        MessageProperties received = amqpMessage.getMessageProperties();
+        int attempt = attemptsOf(received) + 1;
+        if (attempt > topology.getMaxAttempts()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        int delay = topology.delayFor(attempt);
+        MessageProperties properties = copyProperties(received);
+        properties.setHeader(RetryTopology.ATTEMPT_HEADER, attempt);
+        properties.setHeader(RetryTopology.DELAY_HEADER, delay);
+        // Routing key original: ao expirar, a mensagem volta da fila de atraso para o mesmo shard
+        return messagePublisher.republish(topology.retryExchangeName(), received.getReceivedRoutingKey(),
+                        new org.springframework.amqp.core.Message(amqpMessage.getBody(), properties))
+                .handle((ignored, error) -> {
+                    if (error != null) {
+                        retryFailed.increment();
+                        log.warn("⚠️ Retentativa {} não agendada: {}", attempt, error.getMessage());
+                        throw new MessagePublishException(received.getMessageId(), "retentativa não agendada");
+                    }
+                    retried.increment();
+                    log.debug("Tentativa {} agendada em {} ms", attempt, delay);
+                    return true;
+                });
+    }
+
+    /**
+     * Registra uma mensagem rejeitada pelo consumidor sem requeue (vai para a DLQ).
+     */
+    public void recordDeadLettered() {
+        deadLettered.increment();
+    }
+
+    /**
+     * Devolve até limit mensagens da DLQ à exchange principal, com as tentativas zeradas.
+     * Cada mensagem só sai da DLQ depois do confirm da republicação; as que falham continuam lá.
+     *
+     * @throws IllegalStateException se outro reprocessamento estiver em andamento
+     */
+    public ReplayResult replay(int limit) {
+        if (!replayLock.tryLock()) {
+            throw new IllegalStateException("reprocessamento da DLQ já em andamento");
+        }
+        try {
+            int replayedCount = 0;
+            int failedCount = 0;
+            while (replayedCount < limit) {
+                int batch = Math.min(replayBatchSize, limit - replayedCount);
+                int[] result = rabbitTemplate.execute(channel -> replayBatch(channel, batch));
+                replayedCount += result[0];
+                failedCount += result[1];
+                // DLQ vazia ou broker recusando: para e deixa o resto para a próxima chamada
+                if (result[0] + result[1] < batch || result[1] > 0) {
+                    break;
+                }
+            }
+            replayed.add(replayedCount);
+            log.info("✅ DLQ reprocessada: {} mensagens devolvidas, {} falhas", replayedCount, failedCount);
+            return new ReplayResult(replayedCount, failedCount, getDeadLetterCount());
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    private int[] replayBatch(Channel channel, int batch) throws IOException {
+        List<Long> tags = new ArrayList<>(batch);
+        List<CompletableFuture<Void>> confirms = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+            GetResponse response = channel.basicGet(topology.deadLetterQueueName(), false);
+            if (response == null) {
+                break;
+            }
+            MessageProperties received = propertiesConverter.toMessageProperties(
+                    response.getProps(), response.getEnvelope(), StandardCharsets.UTF_8.name());
+            MessageProperties properties = copyProperties(received);
+            properties.getHeaders().remove(RetryTopology.ATTEMPT_HEADER);
+            properties.getHeaders().remove(RetryTopology.DELAY_HEADER);
+            tags.add(response.getEnvelope().getDeliveryTag());
+            // Corpo como está na DLQ (comprimido ou não): o content-encoding segue junto
+            confirms.add(messagePublisher.republish(topology.mainExchangeName(), received.getReceivedRoutingKey(),
+                    new org.springframework.amqp.core.Message(response.getBody(), properties)));
+        }
+
+        try {
+            CompletableFuture.allOf(confirms.toArray(new CompletableFuture<?>[0]))
+                    .get(replayConfirmTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Falhas individuais são tratadas abaixo
+        }
+
+        int replayedCount = 0;
+        int failedCount = 0;
+        for (int i = 0; i < tags.size(); i++) {
+            CompletableFuture<Void> confirm = confirms.get(i);
+            if (confirm.isDone() && !confirm.isCompletedExceptionally()) {
+                channel.basicAck(tags.get(i), false);
+                replayedCount++;
+            } else {
+                channel.basicNack(tags.get(i), false, true);
+                failedCount++;
+            }
+        }
+        return new int[]{replayedCount, failedCount};
+    }
+
+    /**
+     * Até limit mensagens do início da DLQ, sem removê-las: são lidas e devolvidas com nack + requeue.
+     */
+    public List<DeadLetter> peek(int limit) {
+        return rabbitTemplate.execute(channel -> {
+            List<DeadLetter> deadLetters = new ArrayList<>(limit);
+            List<Long> tags = new ArrayList<>(limit);
+            for (int i = 0; i < limit; i++) {
+                GetResponse response = channel.basicGet(topology.deadLetterQueueName(), false);
+                if (response == null) {
+                    break;
+                }
+                tags.add(response.getEnvelope().getDeliveryTag());
+                MessageProperties properties = propertiesConverter.toMessageProperties(
+                        response.getProps(), response.getEnvelope(), StandardCharsets.UTF_8.name());
+                deadLetters.add(describe(new org.springframework.amqp.core.Message(response.getBody(), properties)));
+            }
+            // Nack individual: as mensagens voltam às suas posições na fila
+            for (long tag : tags) {
+                channel.basicNack(tag, false, true);
+            }
+            return deadLetters;
+        });
+    }
+
+    private DeadLetter describe(org.springframework.amqp.core.Message amqpMessage) {
+        MessageProperties properties = amqpMessage.getMessageProperties();
+        Object reason = properties.getHeader("x-first-death-reason");
+        String routingKey = properties.getReceivedRoutingKey();
+        try {
+            Message message = (Message) messageConverter.fromMessage(
+                    payloadCompressor.decompressingPostProcessor().postProcessMessage(amqpMessage));
+            return new DeadLetter(message.getId().toString(), message.getSender(), attemptsOf(properties),
+                    reason == null ? null : reason.toString(), routingKey);
+        } catch (Exception e) {
+            // Mensagem inválida (foi para a DLQ justamente por isso): mostra só os metadados
+            return new DeadLetter(properties.getMessageId(), null, attemptsOf(properties),
+                    reason == null ? null : reason.toString(), routingKey);
+        }
+    }
+
+    // Headers de controle do broker (x-death, x-first-death-*...) ficam de fora
+    private static MessageProperties copyProperties(MessageProperties received) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(received.getContentType());
+        properties.setContentEncoding(received.getContentEncoding());
+        properties.setMessageId(received.getMessageId());
+        properties.setTimestamp(received.getTimestamp());
+        MessageDeliveryMode deliveryMode = received.getReceivedDeliveryMode();
+        properties.setDeliveryMode(deliveryMode != null ? deliveryMode : MessageDeliveryMode.PERSISTENT);
+        for (Map.Entry<String, Object> header : received.getHeaders().entrySet()) {
+            if (!header.getKey().startsWith("x-")) {
+                properties.setHeader(header.getKey(), header.getValue());
+            }
+        }
+        return properties;
+    }
+
+    private static int attemptsOf(MessageProperties properties) {
+        Object attempts = properties.getHeader(RetryTopology.ATTEMPT_HEADER);
+        return attempts instanceof Number number ? number.intValue() : 0;
+    }
+
+    /**
+     * Mensagens na DLQ agora (passive declare no broker), ou -1 se a fila não puder ser consultada.
+     */
+    public long getDeadLetterCount() {
+        try {
+            QueueInformation info = rabbitAdmin.getQueueInfo(topology.deadLetterQueueName());
+            return info == null ? -1 : info.getMessageCount();
+        } catch (Exception e) {
+            log.debug("Falha ao consultar a DLQ: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    public long getRetriedCount() {
+        return retried.sum();
+    }
+
+    public long getRetryFailedCount() {
+        return retryFailed.sum();
+    }
+
+    public long getDeadLetteredCount() {
+        return deadLettered.sum();
+    }
+
+    public long getReplayedCount() {
+        return replayed.sum();
+    }
+}
@@ -1,19 +1,53 @@
 package ifsc.edu.programacaodistribuidaeconcorrente;
 
 import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ciclo de vida do servidor, gerenciado pelo Spring. O start roda antes do Tomcat
+ * aceitar requisições e o stop depois que ele para (fase menor que a do web server),
+ * então não há laço de keep-alive: o contexto do Spring mantém a aplicação viva
+ * e o shutdown hook do Spring dispara o stop.
+ */
 @Slf4j
 @Service
-public class MessageServer {
+public class MessageServer implements SmartLifecycle {
+
+    // Antes do WebServerStartStopLifecycle (Integer.MAX_VALUE - 1) na subida, depois na descida
+    static final int PHASE = Integer.MAX_VALUE - 2048;
 
     @Autowired
     private DatabaseConfig databaseConfig;
     @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
     private QueueManagementConfig queueManagementConfig;
+    @Autowired
+    private WriteBehindMessageWriter writeBehindMessageWriter;
+    @Autowired
+    private MessagingThreads messagingThreads;
+    @Autowired
+    private MessageSpool messageSpool;
+    @Autowired
+    private MessageStatusCounters messageStatusCounters;
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    // Inicializa Cassandra e RabbitMQ ao mesmo tempo; false: um depois do outro
+    @Value("${startup.parallel-init:true}")
+    private boolean parallelInit;
 
     private volatile boolean isRunning = false;
 
@@ -22,43 +56,103 @@ public class MessageServer {
         log.info("MessageServer inicializado pelo Spring");
     }
 
+    @Override
     public void start() {
         try {
             log.info("Iniciando MessageServer...");
+            long start = System.nanoTime();
+
+            // Cassandra: verifica a sessão e o schema e prepara os statements.
+            // RabbitMQ: a primeira conexão declara exchanges, filas e bindings.
+            if (parallelInit) {
+                Executor executor = messagingThreads.taskExecutor("startup-");
+                CompletableFuture<Long> cassandra = CompletableFuture.supplyAsync(() -> timed(this::initCassandra), executor);
+                CompletableFuture<Long> rabbit = CompletableFuture.supplyAsync(() -> timed(queueManagementConfig::init), executor);
+                CompletableFuture.allOf(cassandra, rabbit).join();
+                log.info("Cassandra pronto em {} ms, RabbitMQ em {} ms (em paralelo)", cassandra.join(), rabbit.join());
+            } else {
+                long cassandra = timed(this::initCassandra);
+                long rabbit = timed(queueManagementConfig::init);
+                log.info("Cassandra pronto em {} ms, RabbitMQ em {} ms (em sequência)", cassandra, rabbit);
+            }
 
-            // Inicializar Cassandra
-            databaseConfig.initCassandra();
-            log.info("Database configurado com sucesso");
-
-            // Inicializar Queue Management
-            queueManagementConfig.init();
-            log.info("Queue Management configurado com sucesso");
+            // Relay do outbox só depois da sessão, dos statements e das filas prontos
+            outboxRelay.start();
 
             isRunning = true;
-            log.info("MessageServer iniciado com sucesso!");
-
-            // Manter o servidor ativo
-            while (isRunning) {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
+            log.info("MessageServer iniciado com sucesso em {} ms!", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
 
         } catch (Exception e) {
-            log.error("Erro ao iniciar servidor: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Falha ao iniciar MessageServer", e);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("Erro ao iniciar servidor: " + cause.getMessage());
+            throw new RuntimeException("Falha ao iniciar MessageServer", cause);
         }
     }
 
+    private void initCassandra() {
+        databaseConfig.initCassandra();
+        messageRepository.init();
+    }
+
+    private static long timed(Runnable step) {
+        long start = System.nanoTime();
+        step.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Tempo até a primeira requisição poder ser atendida: o Tomcat já aceita conexões e os
+     * consumidores já estão ligados. Também publicado pelo Spring Boot como application.ready.time.
+     */
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        log.info("✅ Pronto para requisições em {} ms ({} ms desde o início da JVM)",
+                event.getTimeTaken().toMillis(), ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    @Override
+    public void stop() {
+        shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
     public void shutdown() {
+        if (!isRunning) {
+            return;
+        }
         log.info("Parando MessageServer...");
         isRunning = false;
 
         try {
+            // O relay do outbox para primeiro e libera os shards enquanto a sessão está aberta
+            if (outboxRelay != null) {
+                outboxRelay.stop();
+            }
+
+            // O spool para de reproduzir antes; o que restar fica em disco para a próxima inicialização
+            if (messageSpool != null) {
+                messageSpool.stopReplay();
+            }
+
+            // Persistir mensagens pendentes antes de fechar a conexão com o Cassandra
+            if (writeBehindMessageWriter != null) {
+                writeBehindMessageWriter.flushAndStop();
+            }
+
+            // Último flush dos contadores de status, também antes de fechar a sessão
+            if (messageStatusCounters != null) {
+                messageStatusCounters.flushAndStop();
+            }
+
             if (databaseConfig != null) {
                 databaseConfig.close();
             }
@@ -70,10 +164,4 @@ public class MessageServer {
             e.printStackTrace();
         }
     }
-
-    @PreDestroy
-    public void cleanup() {
-        log.info("Executando cleanup do MessageServer...");
-        shutdown();
-    }
 }
@@ -0,0 +1,587 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Spool local em disco para atravessar quedas curtas do RabbitMQ ou do Cassandra.
+ *
+ * Quando a entrega de um envio falha, a mensagem é gravada aqui e o cliente recebe 202 em vez de erro.
+ * Enquanto houver mensagens no spool, os envios novos também entram nele, atrás das anteriores.
+ * Uma thread reproduz o spool em lotes, na ordem de gravação (publicação sem esperar confirms entre
+ * as mensagens, escrita assíncrona no Cassandra), e avança o checkpoint até o fim do trecho entregue.
+ *
+ * Formato: log append-only em segmentos de tamanho fixo mapeados em memória (spool-<n>.log). Cada
+ * registro é [tamanho int][crc32c int][tipo byte][mensagem no formato do {@link BinaryMessageCodec}];
+ * tamanho 0 marca o fim dos dados do segmento. Na inicialização os segmentos são relidos, e o primeiro
+ * registro com tamanho ou CRC inválido (escrita interrompida) encerra o segmento. A posição de leitura
+ * fica no arquivo checkpoint. Segmentos reproduzidos são apagados, e o total em disco é limitado por
+ * spool.max-bytes. A entrega é at-least-once: uma falha no meio de um lote repete o lote a partir dela.
+ */
+@Slf4j
+@Component
+public class MessageSpool {
+
+    /**
+     * O que falta fazer com a mensagem: publicar e gravar, só gravar (já publicada) ou gravar com outbox.
+     */
+    public enum Kind {
+        SEND, PERSIST, OUTBOX
+    }
+
+    private static final int RECORD_HEADER = 9;
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final Kind[] KINDS = Kind.values();
+
+    private static final class Segment {
+        final long id;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        // Fim dos registros válidos
+        int limit;
+
+        Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Entry(Kind kind, byte[] payload, long segmentId, int end) {
+    }
+
+    private final MessagePublisher messagePublisher;
+    private final WriteBehindMessageWriter messageWriter;
+    private final MessageRepository messageRepository;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageStatusCounters statusCounters;
+    private final MessagingThreads messagingThreads;
+
+    @Getter
+    @Value("${spool.enabled:false}")
+    private boolean enabled;
+
+    @Value("${spool.directory:spool}")
+    private String directory;
+
+    @Value("${spool.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    @Value("${spool.max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Value("${spool.force-interval-ms:100}")
+    private long forceIntervalMs;
+
+    @Value("${spool.replay.batch-size:500}")
+    private int replayBatchSize;
+
+    @Value("${spool.replay.timeout-ms:10000}")
+    private long replayTimeoutMs;
+
+    @Value("${spool.replay.retry-interval-ms:1000}")
+    private long retryIntervalMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private Path spoolDirectory;
+    private long nextSegmentId;
+    // Posição de leitura no primeiro segmento
+    private int readPosition;
+    private volatile long pending;
+    private boolean dirty;
+    private MappedByteBuffer checkpoint;
+    private FileChannel checkpointChannel;
+
+    // Mensagens do início do spool já publicadas cuja gravação falhou: na nova tentativa só são gravadas.
+    // Usado apenas pela thread de reprodução; depois de um restart elas podem ser publicadas de novo
+    private final Set<UUID> publishedAhead = new HashSet<>();
+
+    private Thread replayer;
+    private volatile boolean running = false;
+
+    private final LongAdder spooled = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder replayFailed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @Autowired
+    public MessageSpool(MessagePublisher messagePublisher,
+                        WriteBehindMessageWriter messageWriter,
+                        MessageRepository messageRepository,
+                        RecentMessageCache recentMessageCache,
+                        MessageStatusCounters statusCounters,
+                        MessagingThreads messagingThreads) {
+        this.messagePublisher = messagePublisher;
+        this.messageWriter = messageWriter;
+        this.messageRepository = messageRepository;
+        this.recentMessageCache = recentMessageCache;
+        this.statusCounters = statusCounters;
+        this.messagingThreads = messagingThreads;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        if (!enabled) {
+            log.info("Spool local desabilitado");
+            return;
+        }
+        if (segmentBytes < 4096 || maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("spool.segment-bytes deve ser >= 4096 e spool.max-bytes >= spool.segment-bytes");
+        }
+        spoolDirectory = Path.of(directory);
+        try {
+            Files.createDirectories(spoolDirectory);
+            recover();
+        } catch (IOException e) {
+            log.error("❌ Erro ao abrir o spool em {}: {}", spoolDirectory.toAbsolutePath(), e.getMessage());
+            throw new IllegalStateException("Falha ao abrir o spool", e);
+        }
+        running = true;
+        replayer = messagingThreads.start("spool-replayer", this::replayLoop);
+        log.info("Spool local habilitado (" + spoolDirectory.toAbsolutePath() + ", segmento: " + segmentBytes +
+                " bytes, limite: " + maxBytes + " bytes, mensagens pendentes: " + pending + ")");
+    }
+
+    /**
+     * Relê os segmentos a partir do checkpoint, descarta os já reproduzidos e descobre
+     * onde termina o último registro íntegro de cada um.
+     */
+    private void recover() throws IOException {
+        checkpointChannel = FileChannel.open(spoolDirectory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES + Integer.BYTES);
+        long checkpointSegment = checkpoint.getLong(0);
+        int checkpointPosition = checkpoint.getInt(Long.BYTES);
+
+        List<Long> ids;
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            ids = files.map(path -> segmentId(path.getFileName().toString()))
+                    .filter(id -> id >= 0)
+                    .sorted()
+                    .toList();
+        }
+
+        // Um segmento novo nunca reaproveita o id do checkpoint, que pode apontar para o meio dele
+        nextSegmentId = checkpointSegment + 1;
+        long records = 0;
+        for (long id : ids) {
+            if (id < checkpointSegment) {
+                // Reproduzido antes da parada, mas não apagado
+                Files.deleteIfExists(segmentPath(id));
+                continue;
+            }
+            Segment segment = openSegment(id);
+            int position = id == checkpointSegment ? checkpointPosition : 0;
+            int start = position;
+            while (true) {
+                int size = validRecordSize(segment.buffer, position);
+                if (size <= 0) {
+                    if (size < 0) {
+                        log.warn("⚠️ Registro inválido no segmento {} na posição {}: o restante do segmento é descartado",
+                                id, position);
+                    }
+                    break;
+                }
+                position += size;
+                records++;
+            }
+            segment.limit = position;
+            if (segments.isEmpty()) {
+                readPosition = start;
+            }
+            segments.addLast(segment);
+            nextSegmentId = id + 1;
+        }
+
+        // Limpa o lixo depois do último registro íntegro, onde as próximas gravações vão entrar
+        Segment last = segments.peekLast();
+        if (last != null && last.limit + Integer.BYTES <= segmentBytes && last.buffer.getInt(last.limit) != 0) {
+            for (int i = last.limit; i < segmentBytes; i++) {
+                last.buffer.put(i, (byte) 0);
+            }
+            last.buffer.force();
+        }
+        pending = records;
+    }
+
+    // Tamanho do registro na posição; 0 no fim dos dados, -1 se o registro está corrompido
+    private int validRecordSize(MappedByteBuffer buffer, int position) {
+        if (position + RECORD_HEADER > segmentBytes) {
+            return 0;
+        }
+        int length = buffer.getInt(position);
+        if (length == 0) {
+            return 0;
+        }
+        if (length < 1 || length > segmentBytes - position - Integer.BYTES * 2) {
+            return -1;
+        }
+        byte[] body = new byte[length];
+        buffer.get(position + Integer.BYTES * 2, body);
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES) || body[0] < 0 || body[0] >= KINDS.length) {
+            return -1;
+        }
+        return Integer.BYTES * 2 + length;
+    }
+
+    /**
+     * Grava a mensagem no fim do spool. Lança {@link SpoolFullException} quando o limite de disco foi atingido.
+     */
+    public void append(Kind kind, Message message) {
+        byte[] payload = BinaryMessageCodec.encode(message);
+        int length = payload.length + 1;
+        int size = Integer.BYTES * 2 + length;
+        if (size > segmentBytes) {
+            throw new SpoolFullException("Mensagem de " + size + " bytes maior que o segmento do spool");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(kind.ordinal());
+        crc.update(payload);
+
+        lock.lock();
+        try {
+            if (!running) {
+                throw new SpoolFullException("Spool fechado");
+            }
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.limit + size > segmentBytes) {
+                if ((long) (segments.size() + 1) * segmentBytes > maxBytes) {
+                    rejected.increment();
+                    throw new SpoolFullException("Spool cheio (" + segments.size() * (long) segmentBytes + " bytes)");
+                }
+                segment = openSegment(nextSegmentId++);
+                segments.addLast(segment);
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int position = segment.limit;
+            // Tamanho por último: um registro interrompido no meio tem tamanho 0 ou CRC inválido
+            buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+            buffer.put(position + Integer.BYTES * 2, (byte) kind.ordinal());
+            buffer.put(position + RECORD_HEADER, payload);
+            buffer.putInt(position, length);
+            segment.limit = position + size;
+            pending++;
+            dirty = true;
+            appended.signal();
+        } catch (IOException e) {
+            log.error("❌ Erro ao criar segmento do spool: {}", e.getMessage());
+            throw new SpoolFullException("Falha ao criar segmento do spool: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        spooled.increment();
+    }
+
+    /**
+     * true enquanto houver mensagens esperando reprodução: os envios novos devem entrar atrás delas.
+     */
+    public boolean hasBacklog() {
+        return enabled && pending > 0;
+    }
+
+    private void replayLoop() {
+        while (running) {
+            try {
+                List<Entry> batch = nextBatch();
+                force();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                int delivered = replay(batch);
+                if (delivered > 0) {
+                    commit(batch.get(delivered - 1), delivered);
+                }
+                if (delivered < batch.size()) {
+                    log.warn("⚠️ Reprodução do spool parou em {} de {} mensagens; nova tentativa em {} ms",
+                            delivered, batch.size(), retryIntervalMs);
+                    Thread.sleep(retryIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("❌ Erro na reprodução do spool: {}", e.getMessage());
+                try {
+                    Thread.sleep(retryIntervalMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Próximos registros a partir da posição de leitura; espera até force-interval-ms se o spool está vazio
+    private List<Entry> nextBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            if (pending == 0 && running) {
+                appended.await(forceIntervalMs, TimeUnit.MILLISECONDS);
+            }
+            List<Entry> batch = new ArrayList<>(Math.min(replayBatchSize, (int) Math.min(pending, Integer.MAX_VALUE)));
+            Iterator<Segment> iterator = segments.iterator();
+            Segment segment = iterator.hasNext() ? iterator.next() : null;
+            int position = readPosition;
+            while (segment != null && batch.size() < replayBatchSize) {
+                if (position >= segment.limit) {
+                    segment = iterator.hasNext() ? iterator.next() : null;
+                    position = 0;
+                    continue;
+                }
+                MappedByteBuffer buffer = segment.buffer;
+                int length = buffer.getInt(position);
+                byte[] payload = new byte[length - 1];
+                buffer.get(position + RECORD_HEADER, payload);
+                position += Integer.BYTES * 2 + length;
+                batch.add(new Entry(KINDS[buffer.get(position - length)], payload, segment.id, position));
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Entrega o lote na ordem do spool e retorna quantas mensagens do início foram entregues
+    private int replay(List<Entry> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        List<Message> toPublish = new ArrayList<>();
+        for (Entry entry : batch) {
+            Message message = BinaryMessageCodec.decode(entry.payload());
+            messages.add(message);
+            if (entry.kind() == Kind.SEND && !publishedAhead.contains(message.getId())) {
+                toPublish.add(message);
+            }
+        }
+
+        // Publica todas as pendentes antes de esperar pelos confirms
+        Iterator<CompletableFuture<Void>> published = messagePublisher.publishAll(toPublish).iterator();
+        List<CompletableFuture<Void>> confirms = new ArrayList<>(batch.size());
+        List<CompletableFuture<Void>> results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Message message = messages.get(i);
+            Kind kind = batch.get(i).kind();
+            CompletableFuture<Void> confirm = kind == Kind.SEND && !publishedAhead.contains(message.getId())
+                    ? published.next() : null;
+            confirms.add(confirm);
+            results.add(switch (kind) {
+                case SEND -> confirm != null
+                        ? confirm.thenCompose(ignored -> messageWriter.submitAsync(message))
+                        : messageWriter.submitAsync(message).toCompletableFuture();
+                case PERSIST -> messageWriter.submitAsync(message).toCompletableFuture();
+                case OUTBOX -> messageRepository.saveWithOutboxAsync(message).toCompletableFuture();
+            });
+        }
+        try {
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                    .get(replayTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Falhas individuais são tratadas abaixo
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<Void> confirm = confirms.get(i);
+            if (confirm != null && confirm.isDone() && !confirm.isCompletedExceptionally()) {
+                publishedAhead.add(messages.get(i).getId());
+            }
+        }
+
+        // Só o trecho inicial entregue avança o checkpoint; o resto do lote é repetido
+        int delivered = 0;
+        while (delivered < results.size() && results.get(delivered).isDone()
+                && !results.get(delivered).isCompletedExceptionally()) {
+            Message message = messages.get(delivered);
+            publishedAhead.remove(message.getId());
+            recentMessageCache.put(message);
+            statusCounters.record(message.getSender(), MessageStatus.SENT);
+            delivered++;
+        }
+        replayed.add(delivered);
+        replayFailed.add(batch.size() - delivered);
+        log.debug("Spool: {} de {} mensagens reproduzidas", delivered, batch.size());
+        return delivered;
+    }
+
+    // Avança a posição de leitura até o fim de last e apaga os segmentos já reproduzidos
+    private void commit(Entry last, int count) throws IOException {
+        lock.lock();
+        try {
+            while (segments.size() > 1 && segments.peekFirst().id < last.segmentId()) {
+                deleteSegment(segments.pollFirst());
+            }
+            readPosition = last.end();
+            Segment first = segments.peekFirst();
+            // O segmento ativo continua recebendo gravações; os anteriores terminaram
+            if (segments.size() > 1 && readPosition >= first.limit) {
+                deleteSegment(segments.pollFirst());
+                first = segments.peekFirst();
+                readPosition = 0;
+            }
+            pending -= count;
+            checkpoint.putLong(0, first.id);
+            checkpoint.putInt(Long.BYTES, readPosition);
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Grava em disco as páginas alteradas; fora do lock para não atrasar as gravações no spool
+    private void force() {
+        List<MappedByteBuffer> buffers;
+        lock.lock();
+        try {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            buffers = new ArrayList<>(segments.size() + 1);
+            for (Segment segment : segments) {
+                buffers.add(segment.buffer);
+            }
+            buffers.add(checkpoint);
+        } finally {
+            lock.unlock();
+        }
+        for (MappedByteBuffer buffer : buffers) {
+            buffer.force();
+        }
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        Path path = segmentPath(id);
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Arquivo criado com o tamanho do segmento: as páginas ainda não escritas são zeros
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Segment(id, path, channel, buffer);
+    }
+
+    private void deleteSegment(Segment segment) throws IOException {
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+        log.debug("Segmento {} do spool reproduzido e apagado", segment.id);
+    }
+
+    private Path segmentPath(long id) {
+        return spoolDirectory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentId(String fileName) {
+        if (!fileName.startsWith(SEGMENT_PREFIX) || !fileName.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public long getPendingCount() {
+        return pending;
+    }
+
+    public long getDiskBytes() {
+        lock.lock();
+        try {
+            return segments.size() * (long) segmentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSpooledCount() {
+        return spooled.sum();
+    }
+
+    public long getReplayedCount() {
+        return replayed.sum();
+    }
+
+    public long getReplayFailedCount() {
+        return replayFailed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Para a reprodução; o que não foi reproduzido continua em disco para a próxima inicialização.
+     * Chamado pelo {@link MessageServer} antes de esvaziar o write-behind e fechar o Cassandra.
+     */
+    public void stopReplay() {
+        if (!running) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            replayer.join(replayTimeoutMs + retryIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        force();
+        log.info("Reprodução do spool parada ({} mensagens pendentes)", pending);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        stopReplay();
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.channel.close();
+            }
+            checkpointChannel.close();
+        } catch (IOException e) {
+            log.warn("⚠️ Erro ao fechar o spool: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+/**
+ * Ciclo de vida de uma mensagem: sent → delivered → acknowledged ou failed.
+ * O valor gravado no Cassandra e devolvido pela API é {@link #value()}.
+ */
+public enum MessageStatus {
+
+    SENT("sent"),
+    DELIVERED("delivered"),
+    ACKNOWLEDGED("acknowledged"),
+    FAILED("failed");
+
+    private final String value;
+
+    MessageStatus(String value) {
+        this.value = value;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    /**
+     * acknowledged e failed são finais: nenhuma transição sai deles.
+     */
+    public boolean isTerminal() {
+        return this == ACKNOWLEDGED || this == FAILED;
+    }
+
+    public static MessageStatus fromValue(String value) {
+        for (MessageStatus status : values()) {
+            if (status.value.equalsIgnoreCase(value)) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("status desconhecido: " + value);
+    }
+}
@@ -0,0 +1,297 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de mensagens por status, totais e por remetente, mantidos de forma incremental.
+ * Cada transição incrementa um LongAdder em memória (sem lock e sem ida ao Cassandra); uma thread
+ * grava os incrementos acumulados nas tabelas counter a cada stats.counters.flush-interval-ms.
+ *
+ * Os contadores são cumulativos: sent conta as mensagens aceitas, delivered as entregues ao
+ * consumidor, e assim por diante. Uma reentrega do broker conta de novo como delivered, e um
+ * incremento que expira no Cassandra pode ter sido aplicado; os valores são aproximados.
+ */
+@Slf4j
+@Component
+public class MessageStatusCounters {
+
+    private static final MessageStatus[] STATUSES = MessageStatus.values();
+    private static final int MAX_CONCURRENT_WRITES = 64;
+
+    private record Key(String sender, MessageStatus status) {
+    }
+
+    /**
+     * Incrementos já retirados da memória e ainda não refletidos em persistedTotals.
+     */
+    private record InTransit(Map<MessageStatus, Long> totals, Map<String, Map<MessageStatus, Long>> bySender) {
+        static final InTransit NONE = new InTransit(Map.of(), Map.of());
+    }
+
+    private final MessageRepository messageRepository;
+    private final MessagingThreads messagingThreads;
+
+    @Getter
+    @Value("${stats.counters.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stats.counters.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    private final LongAdder[] pendingTotals = new LongAdder[STATUSES.length];
+    private final LongAdder[] recorded = new LongAdder[STATUSES.length];
+    private final ConcurrentHashMap<Key, LongAdder> pendingBySender = new ConcurrentHashMap<>();
+
+    // Escritos só pela thread de flush
+    private volatile Map<String, Long> persistedTotals = Map.of();
+    private volatile InTransit inTransit = InTransit.NONE;
+    @Getter
+    private volatile long lastFlushAt;
+
+    private final LongAdder flushFailures = new LongAdder();
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public MessageStatusCounters(MessageRepository messageRepository, MessagingThreads messagingThreads) {
+        this.messageRepository = messageRepository;
+        this.messagingThreads = messagingThreads;
+        for (int i = 0; i < STATUSES.length; i++) {
+            pendingTotals[i] = new LongAdder();
+            recorded[i] = new LongAdder();
+        }
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        if (!enabled) {
+            log.info("Contadores de status desabilitados");
+            return;
+        }
+        flusher = messagingThreads.scheduledExecutor("status-counters-flush");
+        // Leitura inicial dos totais depois que o MessageServer verificou o schema
+        messageRepository.whenReady().thenRunAsync(this::refreshTotals, flusher);
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Contadores de status habilitados (gravação a cada {} ms)", flushIntervalMs);
+    }
+
+    public void record(String sender, MessageStatus status) {
+        record(sender, status, 1);
+    }
+
+    public void record(String sender, MessageStatus status, long count) {
+        if (!enabled || count == 0) {
+            return;
+        }
+        recorded[status.ordinal()].add(count);
+        pendingTotals[status.ordinal()].add(count);
+        Key key = new Key(sender, status);
+        LongAdder adder = pendingBySender.get(key);
+        if (adder == null) {
+            adder = pendingBySender.computeIfAbsent(key, ignored -> new LongAdder());
+        }
+        adder.add(count);
+    }
+
+    /**
+     * Totais por status: o último valor lido do Cassandra mais os incrementos ainda não gravados.
+     * Não consulta o Cassandra.
+     */
+    public Map<String, Long> getTotals() {
+        InTransit transit = inTransit;
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (MessageStatus status : STATUSES) {
+            totals.put(status.value(), persistedTotals.getOrDefault(status.value(), 0L)
+                    + transit.totals().getOrDefault(status, 0L)
+                    + pendingTotals[status.ordinal()].sum());
+        }
+        return totals;
+    }
+
+    /**
+     * Contadores do remetente: uma leitura da partição dele no Cassandra mais os incrementos ainda não gravados.
+     */
+    public Map<String, Long> getSenderCounts(String sender) {
+        Map<String, Long> persisted = messageRepository.getStatusCounts(sender);
+        Map<MessageStatus, Long> transit = inTransit.bySender().getOrDefault(sender, Map.of());
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (MessageStatus status : STATUSES) {
+            LongAdder pending = pendingBySender.get(new Key(sender, status));
+            counts.put(status.value(), persisted.getOrDefault(status.value(), 0L)
+                    + transit.getOrDefault(status, 0L)
+                    + (pending == null ? 0 : pending.sum()));
+        }
+        return counts;
+    }
+
+    /**
+     * Transições registradas por esta instância desde a inicialização.
+     */
+    public long getRecordedCount(MessageStatus status) {
+        return recorded[status.ordinal()].sum();
+    }
+
+    public long getFlushFailureCount() {
+        return flushFailures.sum();
+    }
+
+    private void flush() {
+        try {
+            Map<MessageStatus, Long> totals = drainTotals();
+            Map<String, Map<MessageStatus, Long>> bySender = drainBySender();
+            if (totals.isEmpty() && bySender.isEmpty()) {
+                return;
+            }
+            inTransit = new InTransit(totals, bySender);
+
+            Semaphore writes = new Semaphore(MAX_CONCURRENT_WRITES);
+            List<CompletableFuture<Void>> results = new ArrayList<>(bySender.size() + 1);
+            CompletableFuture<Void> totalsWrite = totals.isEmpty() ? null : write(null, totals, writes);
+            if (totalsWrite != null) {
+                results.add(totalsWrite);
+            }
+            for (Map.Entry<String, Map<MessageStatus, Long>> sender : bySender.entrySet()) {
+                results.add(write(sender.getKey(), sender.getValue(), writes));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).exceptionally(error -> null).join();
+
+            if (!refreshTotals() && totalsWrite != null && !totalsWrite.isCompletedExceptionally()) {
+                // Sem a releitura, soma localmente os totais gravados para não perdê-los da visão
+                Map<String, Long> updated = new HashMap<>(persistedTotals);
+                totals.forEach((status, delta) -> updated.merge(status.value(), delta, Long::sum));
+                persistedTotals = updated;
+            }
+            inTransit = InTransit.NONE;
+            lastFlushAt = System.currentTimeMillis();
+            log.debug("Contadores de status gravados: {} remetentes", bySender.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("❌ Erro ao gravar contadores de status: {}", e.getMessage());
+        }
+    }
+
+    // Incremento que falhou volta para a memória e é gravado no próximo flush
+    private CompletableFuture<Void> write(String sender, Map<MessageStatus, Long> deltas, Semaphore writes)
+            throws InterruptedException {
+        writes.acquire();
+        return messageRepository.incrementStatusCountsAsync(sender, deltas)
+                .toCompletableFuture()
+                .whenComplete((ignored, error) -> {
+                    writes.release();
+                    if (error != null) {
+                        flushFailures.increment();
+                        log.warn("⚠️ Contadores de status não gravados ({}): {}",
+                                sender == null ? "totais" : sender, error.getMessage());
+                        restore(sender, deltas);
+                    }
+                });
+    }
+
+    private void restore(String sender, Map<MessageStatus, Long> deltas) {
+        for (Map.Entry<MessageStatus, Long> delta : deltas.entrySet()) {
+            if (sender == null) {
+                pendingTotals[delta.getKey().ordinal()].add(delta.getValue());
+            } else {
+                pendingBySender.computeIfAbsent(new Key(sender, delta.getKey()), ignored -> new LongAdder())
+                        .add(delta.getValue());
+            }
+        }
+    }
+
+    private Map<MessageStatus, Long> drainTotals() {
+        Map<MessageStatus, Long> totals = new EnumMap<>(MessageStatus.class);
+        for (MessageStatus status : STATUSES) {
+            long delta = pendingTotals[status.ordinal()].sumThenReset();
+            if (delta != 0) {
+                totals.put(status, delta);
+            }
+        }
+        return totals;
+    }
+
+    private Map<String, Map<MessageStatus, Long>> drainBySender() {
+        Map<String, Map<MessageStatus, Long>> bySender = new HashMap<>();
+        for (Map.Entry<Key, LongAdder> entry : pendingBySender.entrySet()) {
+            LongAdder adder = entry.getValue();
+            long delta = adder.sumThenReset();
+            // Remetente sem incrementos desde o último flush: remove a entrada para não acumular
+            // remetentes inativos, e recolhe o que chegou entre a leitura e a remoção
+            if (delta == 0 && pendingBySender.remove(entry.getKey(), adder)) {
+                delta = adder.sumThenReset();
+            }
+            if (delta != 0) {
+                bySender.computeIfAbsent(entry.getKey().sender(), sender -> new EnumMap<>(MessageStatus.class))
+                        .put(entry.getKey().status(), delta);
+            }
+        }
+        return bySender;
+    }
+
+    private boolean refreshTotals() {
+        try {
+            persistedTotals = messageRepository.getStatusCounts(null);
+            return true;
+        } catch (Exception e) {
+            log.warn("⚠️ Totais de status não lidos do Cassandra: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Para a thread de flush e grava os incrementos acumulados desde o último flush.
+     * Chamado pelo MessageServer antes de fechar a sessão do Cassandra; o que não puder
+     * ser gravado é registrado no log como perdido.
+     */
+    public void flushAndStop() {
+        if (flusher == null || flusher.isShutdown()) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            if (flusher.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS)) {
+                // Último flush com os incrementos acumulados desde o anterior
+                flush();
+            } else {
+                log.error("❌ Flush dos contadores de status não terminou em {} ms", flushIntervalMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logDropped();
+    }
+
+    // Incrementos que ficaram em memória (flush não executado ou escrita que falhou) se perdem no encerramento
+    private void logDropped() {
+        Map<MessageStatus, Long> totals = drainTotals();
+        Map<String, Map<MessageStatus, Long>> bySender = drainBySender();
+        if (!totals.isEmpty() || !bySender.isEmpty()) {
+            log.error("❌ Contadores de status não gravados no encerramento: totais {}, {} remetentes",
+                    totals, bySender.size());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        // Normalmente já chamado pelo MessageServer; aqui só cobre a parada sem o ciclo de vida dele
+        flushAndStop();
+    }
+}
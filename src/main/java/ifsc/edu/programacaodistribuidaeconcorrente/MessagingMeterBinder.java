@@ -0,0 +1,164 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registra no Micrometer os contadores e gauges que os componentes já mantêm
+ * (filas, em voo, consumo, cache, compressão, outbox, admissão, status, retentativas, spool). Os valores são lidos
+ * apenas no scrape, sem custo no caminho quente.
+ */
+@Component
+public class MessagingMeterBinder implements MeterBinder {
+
+    private final WriteBehindMessageWriter writeBehindMessageWriter;
+    private final MessagePublisher messagePublisher;
+    private final MessageConsumer messageConsumer;
+    private final BrokerQueueMonitor brokerQueueMonitor;
+    private final RecentMessageCache recentMessageCache;
+    private final PayloadCompressor payloadCompressor;
+    private final OutboxRelay outboxRelay;
+    private final AdmissionControl admissionControl;
+    private final MessageStatusCounters statusCounters;
+    private final MessageRetrier messageRetrier;
+    private final MessageSpool messageSpool;
+
+    public MessagingMeterBinder(WriteBehindMessageWriter writeBehindMessageWriter,
+                                MessagePublisher messagePublisher,
+                                MessageConsumer messageConsumer,
+                                BrokerQueueMonitor brokerQueueMonitor,
+                                RecentMessageCache recentMessageCache,
+                                PayloadCompressor payloadCompressor,
+                                OutboxRelay outboxRelay,
+                                AdmissionControl admissionControl,
+                                MessageStatusCounters statusCounters,
+                                MessageRetrier messageRetrier,
+                                MessageSpool messageSpool) {
+        this.writeBehindMessageWriter = writeBehindMessageWriter;
+        this.messagePublisher = messagePublisher;
+        this.messageConsumer = messageConsumer;
+        this.brokerQueueMonitor = brokerQueueMonitor;
+        this.recentMessageCache = recentMessageCache;
+        this.payloadCompressor = payloadCompressor;
+        this.outboxRelay = outboxRelay;
+        this.admissionControl = admissionControl;
+        this.statusCounters = statusCounters;
+        this.messageRetrier = messageRetrier;
+        this.messageSpool = messageSpool;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // Filas
+        Gauge.builder("messaging.write-behind.queue.depth", writeBehindMessageWriter, WriteBehindMessageWriter::getQueueDepth)
+                .register(registry);
+        Gauge.builder("messaging.broker.queue.depth", brokerQueueMonitor, BrokerQueueMonitor::getMessageCount)
+                .register(registry);
+        Gauge.builder("messaging.broker.queue.consumers", brokerQueueMonitor, BrokerQueueMonitor::getConsumerCount)
+                .register(registry);
+
+        // Write-behind
+        FunctionCounter.builder("messaging.write-behind.flushed", writeBehindMessageWriter, w -> w.getFlushedCount().get())
+                .register(registry);
+        FunctionCounter.builder("messaging.write-behind.failed", writeBehindMessageWriter, w -> w.getFailedCount().get())
+                .register(registry);
+        FunctionCounter.builder("messaging.write-behind.rejected", writeBehindMessageWriter, w -> w.getRejectedCount().get())
+                .register(registry);
+
+        // Publisher
+        Gauge.builder("messaging.publisher.in-flight", messagePublisher, MessagePublisher::getInFlight)
+                .register(registry);
+        FunctionCounter.builder("messaging.publisher.confirmed", messagePublisher, MessagePublisher::getConfirmedCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.publisher.nacked", messagePublisher, MessagePublisher::getNackedCount)
+                .register(registry);
+
+        // Consumidor
+        FunctionCounter.builder("messaging.consumer.consumed", messageConsumer, MessageConsumer::getConsumedCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.consumer.failed", messageConsumer, MessageConsumer::getFailedCount)
+                .register(registry);
+        Gauge.builder("messaging.consumer.rate", messageConsumer, MessageConsumer::getConsumedPerSecond)
+                .baseUnit("messages/s")
+                .register(registry);
+
+        // Cache
+        FunctionCounter.builder("messaging.cache.hits", recentMessageCache, RecentMessageCache::getHitCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.cache.misses", recentMessageCache, RecentMessageCache::getMissCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.cache.evictions", recentMessageCache, RecentMessageCache::getEvictionCount)
+                .register(registry);
+        Gauge.builder("messaging.cache.size", recentMessageCache, RecentMessageCache::getEstimatedBytes)
+                .baseUnit("bytes")
+                .register(registry);
+
+        // Compressão
+        FunctionCounter.builder("messaging.compression.bytes.in", payloadCompressor, PayloadCompressor::getBytesIn)
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("messaging.compression.bytes.out", payloadCompressor, PayloadCompressor::getBytesOut)
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("messaging.compression.time", payloadCompressor, PayloadCompressor::getCompressTimeMs)
+                .baseUnit("milliseconds")
+                .register(registry);
+        FunctionCounter.builder("messaging.decompression.time", payloadCompressor, PayloadCompressor::getDecompressTimeMs)
+                .baseUnit("milliseconds")
+                .register(registry);
+
+        // Outbox
+        FunctionCounter.builder("messaging.outbox.relayed", outboxRelay, OutboxRelay::getRelayedCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.outbox.failed", outboxRelay, OutboxRelay::getFailedCount)
+                .register(registry);
+
+        // Controle de admissão
+        FunctionCounter.builder("messaging.admission.rejected", admissionControl, AdmissionControl::getRateLimitedCount)
+                .tag("reason", AdmissionControl.REASON_RATE_LIMITED)
+                .register(registry);
+        FunctionCounter.builder("messaging.admission.rejected", admissionControl, AdmissionControl::getConcurrencyRejectedCount)
+                .tag("reason", AdmissionControl.REASON_CONCURRENCY)
+                .register(registry);
+        FunctionCounter.builder("messaging.admission.rejected", admissionControl, AdmissionControl::getShedCount)
+                .tag("reason", AdmissionControl.REASON_OVERLOADED)
+                .register(registry);
+        Gauge.builder("messaging.admission.active", admissionControl, AdmissionControl::getActiveRequests)
+                .register(registry);
+
+        // Ciclo de vida das mensagens (transições registradas por esta instância)
+        for (MessageStatus status : MessageStatus.values()) {
+            FunctionCounter.builder("messaging.status.transitions", statusCounters, c -> c.getRecordedCount(status))
+                    .tag("status", status.value())
+                    .register(registry);
+        }
+        FunctionCounter.builder("messaging.status.flush.failed", statusCounters, MessageStatusCounters::getFlushFailureCount)
+                .register(registry);
+
+        // Retentativas e DLQ
+        FunctionCounter.builder("messaging.retry.scheduled", messageRetrier, MessageRetrier::getRetriedCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.retry.failed", messageRetrier, MessageRetrier::getRetryFailedCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.dlq.dead-lettered", messageRetrier, MessageRetrier::getDeadLetteredCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.dlq.replayed", messageRetrier, MessageRetrier::getReplayedCount)
+                .register(registry);
+
+        // Spool local
+        Gauge.builder("messaging.spool.pending", messageSpool, MessageSpool::getPendingCount)
+                .register(registry);
+        Gauge.builder("messaging.spool.disk", messageSpool, MessageSpool::getDiskBytes)
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("messaging.spool.spooled", messageSpool, MessageSpool::getSpooledCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.spool.replayed", messageSpool, MessageSpool::getReplayedCount)
+                .register(registry);
+        FunctionCounter.builder("messaging.spool.rejected", messageSpool, MessageSpool::getRejectedCount)
+                .register(registry);
+    }
+}
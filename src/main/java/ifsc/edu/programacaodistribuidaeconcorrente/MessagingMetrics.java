@@ -0,0 +1,97 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timers por estágio do pipeline (messaging.stage{stage, outcome}).
+ * O count de cada timer é o contador de sucessos/falhas do estágio, e o histograma
+ * permite calcular percentis no Prometheus. Os timers são criados uma vez e reutilizados,
+ * então registrar uma medição não aloca nem consulta o registry.
+ * Entre start e record a operação conta como em voo no estágio (messaging.stage.in-flight),
+ * valor usado também pelo controle de admissão.
+ */
+@Component
+public class MessagingMetrics {
+
+    public static final String STAGE_PUBLISH = "amqp.publish";
+    public static final String STAGE_WRITE = "cassandra.write";
+    public static final String STAGE_BATCH_WRITE = "cassandra.batch-write";
+    public static final String STAGE_READ = "cassandra.read";
+    public static final String STAGE_LWT = "cassandra.lwt";
+
+    private static final String CASSANDRA_PREFIX = "cassandra.";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> successTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> failureTimers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public MessagingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (String stage : new String[]{STAGE_PUBLISH, STAGE_WRITE, STAGE_BATCH_WRITE, STAGE_READ, STAGE_LWT}) {
+            inFlight(stage);
+        }
+    }
+
+    /**
+     * Marca o início de uma operação do estágio. Toda chamada deve ter um record correspondente.
+     */
+    public long start(String stage) {
+        inFlight(stage).incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void record(String stage, long startNanos, boolean success) {
+        inFlight(stage).decrementAndGet();
+        timer(stage, success).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> CompletionStage<T> recordAsync(String stage, long startNanos, CompletionStage<T> operation) {
+        return operation.whenComplete((result, error) -> record(stage, startNanos, error == null));
+    }
+
+    /**
+     * Requisições ao Cassandra em andamento, somando todos os estágios cassandra.*.
+     */
+    public int getCassandraInFlight() {
+        int total = 0;
+        for (Map.Entry<String, AtomicInteger> entry : inFlight.entrySet()) {
+            if (entry.getKey().startsWith(CASSANDRA_PREFIX)) {
+                total += entry.getValue().get();
+            }
+        }
+        return total;
+    }
+
+    private AtomicInteger inFlight(String stage) {
+        AtomicInteger counter = inFlight.get(stage);
+        if (counter != null) {
+            return counter;
+        }
+        return inFlight.computeIfAbsent(stage, key -> registry.gauge("messaging.stage.in-flight",
+                Tags.of("stage", key), new AtomicInteger()));
+    }
+
+    private Timer timer(String stage, boolean success) {
+        Map<String, Timer> timers = success ? successTimers : failureTimers;
+        Timer timer = timers.get(stage);
+        if (timer != null) {
+            return timer;
+        }
+        return timers.computeIfAbsent(stage, key -> Timer.builder("messaging.stage")
+                .description("Latência por estágio do pipeline de mensagens")
+                .tag("stage", key)
+                .tag("outcome", success ? "success" : "failure")
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+}
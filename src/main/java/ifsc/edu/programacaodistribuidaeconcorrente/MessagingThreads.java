@@ -0,0 +1,54 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Criação das threads de trabalho do servidor (flush, relay, publisher, consumidores, tarefas periódicas).
+ * Segue spring.threads.virtual.enabled, a mesma propriedade que coloca o Tomcat
+ * em virtual threads: habilitada, todo código bloqueante em Cassandra/RabbitMQ
+ * roda em virtual threads; desabilitada, em threads de plataforma daemon.
+ * Por isso as seções críticas do servidor usam ReentrantLock em vez de synchronized,
+ * que prenderia a virtual thread ao carrier enquanto ela bloqueia.
+ */
+@Slf4j
+@Component
+public class MessagingThreads {
+
+    @Getter
+    private final boolean virtual;
+
+    public MessagingThreads(@Value("${spring.threads.virtual.enabled:false}") boolean virtual) {
+        this.virtual = virtual;
+        log.info("Modelo de execução: " + (virtual ? "virtual threads" : "pool de threads de plataforma"));
+    }
+
+    public Thread start(String name, Runnable task) {
+        return builder().name(name).start(task);
+    }
+
+    /**
+     * Executor de uma única thread para tarefas periódicas (amostragem, varredura, flush).
+     */
+    public ScheduledExecutorService scheduledExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(builder().name(name).factory());
+    }
+
+    private Thread.Builder builder() {
+        return virtual ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+    }
+
+    public TaskExecutor taskExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(virtual);
+        executor.setDaemon(true);
+        return executor;
+    }
+}
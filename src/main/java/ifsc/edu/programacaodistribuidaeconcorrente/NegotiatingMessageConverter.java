@@ -0,0 +1,48 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+/**
+ * MessageConverter com negociação por content-type.
+ * Na publicação usa o codec configurado (amqp.codec): binário para {@link Message},
+ * JSON para qualquer outro objeto. No consumo escolhe o decodificador pelo content-type
+ * da mensagem recebida, então mensagens JSON antigas continuam sendo lidas.
+ */
+public class NegotiatingMessageConverter implements MessageConverter {
+
+    public static final String BINARY_CONTENT_TYPE = "application/x-message-binary";
+
+    private final MessageConverter jsonConverter;
+    private final boolean binaryEnabled;
+
+    public NegotiatingMessageConverter(MessageConverter jsonConverter, boolean binaryEnabled) {
+        this.jsonConverter = jsonConverter;
+        this.binaryEnabled = binaryEnabled;
+    }
+
+    @Override
+    public org.springframework.amqp.core.Message toMessage(Object object, MessageProperties messageProperties) {
+        if (binaryEnabled && object instanceof Message message) {
+            byte[] body = BinaryMessageCodec.encode(message);
+            messageProperties.setContentType(BINARY_CONTENT_TYPE);
+            messageProperties.setContentLength(body.length);
+            return new org.springframework.amqp.core.Message(body, messageProperties);
+        }
+        return jsonConverter.toMessage(object, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(org.springframework.amqp.core.Message message) {
+        String contentType = message.getMessageProperties().getContentType();
+        if (BINARY_CONTENT_TYPE.equals(contentType)) {
+            try {
+                return BinaryMessageCodec.decode(message.getBody());
+            } catch (RuntimeException e) {
+                throw new MessageConversionException("Falha ao decodificar mensagem binária", e);
+            }
+        }
+        return jsonConverter.fromMessage(message);
+    }
+}
@@ -0,0 +1,242 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Relay do outbox transacional. Com messaging.send-mode=outbox o /api/send grava apenas
+ * no Cassandra (mensagem + entrada de outbox) e este componente publica as entradas no
+ * exchange em lotes, com vários workers em paralelo, apagando cada entrada após o confirm.
+ * Cada worker cuida de um subconjunto fixo de shards do outbox.
+ * A entrega é at-least-once: uma falha entre o confirm e o delete causa republicação.
+ *
+ * Com várias instâncias, cada shard tem um único dono: o worker só lê um shard depois de
+ * assumi-lo com uma LWT na tabela de leases (TTL outbox.relay.lease-ttl-seconds) e renova a
+ * posse a cada terço do TTL. Um shard cujo dono parou é assumido por outra instância quando
+ * o TTL expira. Os workers são iniciados pelo {@link MessageServer}, depois do Cassandra e do
+ * RabbitMQ, e param antes de a sessão ser fechada.
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    static final String MODE_OUTBOX = "outbox";
+
+    private final MessageRepository messageRepository;
+    private final MessagePublisher messagePublisher;
+    private final MessagingThreads messagingThreads;
+
+    @Value("${messaging.send-mode:direct}")
+    private String sendMode;
+
+    @Value("${outbox.relay.workers:4}")
+    private int workers;
+
+    @Value("${outbox.relay.batch-size:200}")
+    private int batchSize;
+
+    @Value("${outbox.relay.poll-interval-ms:100}")
+    private long pollIntervalMs;
+
+    @Value("${outbox.relay.rescan-interval-ms:30000}")
+    private long rescanIntervalMs;
+
+    @Value("${outbox.relay.confirm-timeout-ms:10000}")
+    private long confirmTimeoutMs;
+
+    @Value("${outbox.relay.lease-ttl-seconds:30}")
+    private int leaseTtlSeconds;
+
+    // Identifica esta instância como dona dos shards na tabela de leases
+    private final UUID instanceId = UUID.randomUUID();
+
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = false;
+
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Autowired
+    public OutboxRelay(MessageRepository messageRepository,
+                       MessagePublisher messagePublisher,
+                       MessagingThreads messagingThreads) {
+        this.messageRepository = messageRepository;
+        this.messagePublisher = messagePublisher;
+        this.messagingThreads = messagingThreads;
+    }
+
+    public boolean isEnabled() {
+        return MODE_OUTBOX.equalsIgnoreCase(sendMode);
+    }
+
+    /**
+     * Inicia os workers. Chamado pelo {@link MessageServer} com a sessão e os statements prontos.
+     */
+    public void start() {
+        if (!isEnabled() || running) {
+            return;
+        }
+        int shards = messageRepository.getOutboxShards();
+        int workerCount = Math.min(workers, shards);
+        running = true;
+        for (int worker = 0; worker < workerCount; worker++) {
+            int index = worker;
+            threads.add(messagingThreads.start("outbox-relay-" + worker, () -> workerLoop(index, workerCount, shards)));
+        }
+        log.info("Outbox relay iniciado (workers: " + workerCount + ", shards: " + shards + ", lote: " + batchSize +
+                ", instância: " + instanceId + ")");
+    }
+
+    private void workerLoop(int worker, int workerCount, int shards) {
+        // Posição de leitura por shard, para não reler os tombstones das entradas já apagadas
+        UUID[] cursors = new UUID[shards];
+        // Próxima renovação de cada shard deste worker; 0 quando o shard não é desta instância
+        long[] leaseRenewAt = new long[shards];
+        long lastRescan = System.currentTimeMillis();
+
+        while (running) {
+            try {
+                // Periodicamente recomeça do início para pegar entradas gravadas fora de ordem
+                if (System.currentTimeMillis() - lastRescan >= rescanIntervalMs) {
+                    Arrays.fill(cursors, null);
+                    lastRescan = System.currentTimeMillis();
+                }
+
+                int published = 0;
+                for (int shard = worker; shard < shards && running; shard += workerCount) {
+                    if (holdsLease(shard, leaseRenewAt, cursors)) {
+                        published += relayShard(shard, cursors);
+                    }
+                }
+                if (published == 0) {
+                    Thread.sleep(pollIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("❌ Erro no outbox relay (worker {}): {}", worker, e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        // Parada normal: libera os shards para que outra instância não espere o TTL
+        for (int shard = worker; shard < shards; shard += workerCount) {
+            if (leaseRenewAt[shard] != 0) {
+                messageRepository.releaseOutboxLeaseAsync(shard, instanceId);
+            }
+        }
+    }
+
+    // Assume ou renova a posse do shard quando necessário; shard de outra instância é pulado
+    private boolean holdsLease(int shard, long[] leaseRenewAt, UUID[] cursors) {
+        long now = System.currentTimeMillis();
+        if (leaseRenewAt[shard] != 0 && now < leaseRenewAt[shard]) {
+            return true;
+        }
+        boolean held = leaseRenewAt[shard] != 0
+                ? messageRepository.renewOutboxLease(shard, instanceId, leaseTtlSeconds)
+                : messageRepository.acquireOutboxLease(shard, instanceId, leaseTtlSeconds);
+        if (!held && leaseRenewAt[shard] != 0) {
+            log.warn("⚠️ Posse do shard {} do outbox perdida", shard);
+            held = messageRepository.acquireOutboxLease(shard, instanceId, leaseTtlSeconds);
+        }
+        if (!held) {
+            leaseRenewAt[shard] = 0;
+            return false;
+        }
+        if (leaseRenewAt[shard] == 0) {
+            // Shard recém-assumido: relê do início, o dono anterior pode ter deixado entradas
+            cursors[shard] = null;
+            log.debug("Shard {} do outbox assumido", shard);
+        }
+        leaseRenewAt[shard] = now + TimeUnit.SECONDS.toMillis(leaseTtlSeconds) / 3;
+        return true;
+    }
+
+    private int relayShard(int shard, UUID[] cursors) {
+        List<Message> entries = messageRepository.getOutboxEntries(shard, cursors[shard], batchSize);
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        // Publica o lote inteiro antes de esperar pelos confirms
+        List<CompletableFuture<Void>> confirms = new ArrayList<>(entries.size());
+        for (Message entry : entries) {
+            confirms.add(messagePublisher.publish(entry));
+        }
+        try {
+            CompletableFuture.allOf(confirms.toArray(new CompletableFuture<?>[0]))
+                    .get(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Falhas individuais são tratadas abaixo
+        }
+
+        List<Message> done = new ArrayList<>(entries.size());
+        UUID cursor = cursors[shard];
+        boolean contiguous = true;
+        for (int i = 0; i < entries.size(); i++) {
+            CompletableFuture<Void> confirm = confirms.get(i);
+            if (confirm.isDone() && !confirm.isCompletedExceptionally()) {
+                done.add(entries.get(i));
+                if (contiguous) {
+                    cursor = MessageRepository.messageTime(entries.get(i));
+                }
+            } else {
+                // O cursor para antes da primeira falha para que ela seja tentada de novo
+                contiguous = false;
+            }
+        }
+
+        messageRepository.deleteOutboxEntriesAsync(shard, done).toCompletableFuture().join();
+        cursors[shard] = cursor;
+        relayed.add(done.size());
+        failed.add(entries.size() - done.size());
+        log.debug("Outbox shard {}: {} publicadas, {} falhas", shard, done.size(), entries.size() - done.size());
+        return done.size();
+    }
+
+    public long getRelayedCount() {
+        return relayed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Para os workers e libera os shards. Chamado pelo {@link MessageServer} antes de fechar a sessão.
+     */
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Thread thread : threads) {
+            try {
+                thread.join(confirmTimeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("Outbox relay parado");
+    }
+}
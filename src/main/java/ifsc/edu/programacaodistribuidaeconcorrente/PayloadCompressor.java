@@ -0,0 +1,212 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressão por limiar do conteúdo das mensagens, com Deflater/Inflater do JDK.
+ * Só comprime payloads com pelo menos compression.threshold-bytes e só mantém o
+ * resultado quando ele fica menor que o original. Usada no RabbitMQ (corpo inteiro,
+ * marcado pelo content-encoding "deflate") e no Cassandra (coluna content_blob).
+ * A descompressão para em compression.max-inflated-bytes, para que um payload pequeno que
+ * infla demais não esgote a memória do consumidor.
+ */
+@Slf4j
+@Component
+public class PayloadCompressor {
+
+    static final String ENCODING = "deflate";
+
+    @Getter
+    private final boolean enabled;
+    private final int thresholdBytes;
+    private final int level;
+    private final int maxInflatedBytes;
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressed = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    public PayloadCompressor(@Value("${compression.enabled:true}") boolean enabled,
+                             @Value("${compression.threshold-bytes:4096}") int thresholdBytes,
+                             @Value("${compression.level:1}") int level,
+                             @Value("${compression.max-inflated-bytes:16777216}") int maxInflatedBytes) {
+        this.enabled = enabled;
+        this.thresholdBytes = thresholdBytes;
+        this.level = level;
+        this.maxInflatedBytes = maxInflatedBytes;
+        log.info("Compressão de payload: " + (enabled ? "a partir de " + thresholdBytes + " bytes, nível " + level : "desabilitada"));
+    }
+
+    public boolean shouldCompress(int length) {
+        return enabled && length >= thresholdBytes;
+    }
+
+    /**
+     * Comprime o texto em UTF-8. Retorna null quando o texto está abaixo do limiar
+     * ou quando a versão comprimida não fica menor.
+     */
+    public byte[] compressText(String text) {
+        // length() em chars é um limite inferior barato para o tamanho em UTF-8
+        if (text == null || !shouldCompress(text.length())) {
+            return null;
+        }
+        return compress(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String decompressText(byte[] data) {
+        return new String(decompress(data), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Comprime os bytes ou retorna null se o resultado não for menor que a entrada.
+     */
+    public byte[] compress(byte[] input) {
+        long start = System.nanoTime();
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] output = new byte[input.length];
+            int length = deflater.deflate(output);
+            if (!deflater.finished() || length >= input.length) {
+                skipped.increment();
+                return null;
+            }
+            compressed.increment();
+            bytesIn.add(input.length);
+            bytesOut.add(length);
+            return Arrays.copyOf(output, length);
+        } finally {
+            deflater.end();
+            compressNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Descomprime os bytes. Lança IllegalArgumentException se o payload for inválido, truncado
+     * ou passar de compression.max-inflated-bytes depois de descomprimido.
+     */
+    public byte[] decompress(byte[] data) {
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            // Estimativa em long: data.length * 4 estoura int para corpos acima de ~512 MiB
+            ByteArrayOutputStream output = new ByteArrayOutputStream((int) Math.min(data.length * 4L, maxInflatedBytes));
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Payload comprimido truncado");
+                }
+                if (output.size() + length > maxInflatedBytes) {
+                    throw new IllegalArgumentException("Payload descomprimido maior que " + maxInflatedBytes + " bytes");
+                }
+                output.write(buffer, 0, length);
+            }
+            decompressed.increment();
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Payload comprimido inválido", e);
+        } finally {
+            inflater.end();
+            decompressNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Post-processor de publicação: comprime o corpo da mensagem AMQP acima do limiar e
+     * marca o content-encoding como "deflate[:encoding original]".
+     */
+    public MessagePostProcessor compressingPostProcessor() {
+        return message -> {
+            byte[] body = message.getBody();
+            String original = message.getMessageProperties().getContentEncoding();
+            // Mensagem republicada sem descomprimir (reprocessamento da DLQ) já está comprimida
+            if (!shouldCompress(body.length) || (original != null && original.startsWith(ENCODING))) {
+                return message;
+            }
+            byte[] output = compress(body);
+            if (output == null) {
+                return message;
+            }
+            message.getMessageProperties().setContentEncoding(original == null ? ENCODING : ENCODING + ":" + original);
+            message.getMessageProperties().setContentLength(output.length);
+            return new org.springframework.amqp.core.Message(output, message.getMessageProperties());
+        };
+    }
+
+    /**
+     * Post-processor de consumo: descomprime mensagens marcadas com "deflate" e
+     * restaura o content-encoding original antes da conversão. Payload inválido ou grande
+     * demais lança MessageConversionException, como qualquer outra mensagem que não converte.
+     */
+    public MessagePostProcessor decompressingPostProcessor() {
+        return message -> {
+            String encoding = message.getMessageProperties().getContentEncoding();
+            if (encoding == null || !encoding.startsWith(ENCODING)) {
+                return message;
+            }
+            byte[] body;
+            try {
+                body = decompress(message.getBody());
+            } catch (IllegalArgumentException e) {
+                throw new MessageConversionException(e.getMessage(), e);
+            }
+            int separator = encoding.indexOf(':');
+            message.getMessageProperties().setContentEncoding(separator < 0 ? null : encoding.substring(separator + 1));
+            message.getMessageProperties().setContentLength(body.length);
+            return new org.springframework.amqp.core.Message(body, message.getMessageProperties());
+        };
+    }
+
+    public long getCompressedCount() {
+        return compressed.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    public long getDecompressedCount() {
+        return decompressed.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public double getCompressionRatio() {
+        long out = bytesOut.sum();
+        return out == 0 ? 0.0 : bytesIn.sum() / (double) out;
+    }
+
+    public double getCompressTimeMs() {
+        return compressNanos.sum() / 1_000_000.0;
+    }
+
+    public double getDecompressTimeMs() {
+        return decompressNanos.sum() / 1_000_000.0;
+    }
+}
@@ -0,0 +1,80 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de statements preparados, indexados pelo texto CQL.
+ * Cada query é preparada uma única vez por sessão e reutilizada em todas as requisições,
+ * evitando o round-trip de PREPARE no caminho quente.
+ *
+ * O perfil de execução é escolhido na preparação e herdado pelos bound statements: SELECTs no
+ * perfil read, marcados como idempotentes (e portanto elegíveis a execução especulativa), e as
+ * demais queries no perfil write. Os perfis são definidos no {@link DatabaseConfig}.
+ */
+@Slf4j
+@Component
+public class PreparedStatementRegistry {
+
+    static final String READ_PROFILE = "read";
+    static final String WRITE_PROFILE = "write";
+
+    private final CqlSession session;
+    private final Map<String, PreparedStatement> statements = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PreparedStatementRegistry(CqlSession session) {
+        this.session = session;
+    }
+
+    public PreparedStatement get(String query) {
+        PreparedStatement prepared = statements.get(query);
+        if (prepared != null) {
+            return prepared;
+        }
+        return statements.computeIfAbsent(query, this::prepare);
+    }
+
+    /**
+     * Prepara as queries ainda não registradas, todas ao mesmo tempo (um PREPARE assíncrono por query).
+     */
+    public CompletableFuture<Void> prepareAllAsync(Collection<String> queries) {
+        List<CompletableFuture<PreparedStatement>> pending = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            if (!statements.containsKey(query)) {
+                pending.add(session.prepareAsync(statementFor(query)).toCompletableFuture()
+                        .thenApply(prepared -> statements.computeIfAbsent(query, ignored -> prepared)));
+            }
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private PreparedStatement prepare(String query) {
+        PreparedStatement prepared = session.prepare(statementFor(query));
+        log.debug("Statement preparado: {}", query);
+        return prepared;
+    }
+
+    static SimpleStatement statementFor(String query) {
+        boolean read = query.regionMatches(true, 0, "SELECT", 0, 6);
+        return SimpleStatement.builder(query)
+                .setExecutionProfileName(read ? READ_PROFILE : WRITE_PROFILE)
+                .setIdempotence(read)
+                .build();
+    }
+
+    public int size() {
+        return statements.size();
+    }
+}
@@ -13,6 +13,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Slf4j
 @Component
 public class QueueManagementConfig {
@@ -31,6 +34,14 @@ public class QueueManagementConfig {
     @Lazy
     private RabbitAdmin rabbitAdmin;
 
+    @Getter
+    @Autowired
+    private QueueSharding queueSharding;
+
+    @Getter
+    @Autowired
+    private RetryTopology retryTopology;
+
     // Configurações de filas e exchanges
     @Getter
     @Value("${queue.message.name}")
@@ -39,6 +50,14 @@ public class QueueManagementConfig {
     @Value("${queue.message.durable}")
     private boolean queueDurable;
 
+    // 0: sem expiração; mensagem expirada vai para a DLQ
+    @Value("${queue.message.ttl-ms:0}")
+    private long messageTtlMs;
+
+    // Com vários consumidores na mesma fila (várias instâncias), só um recebe por vez: mantém a ordem
+    @Value("${queue.message.single-active-consumer:false}")
+    private boolean singleActiveConsumer;
+
     @Getter
     @Value("${queue.message.routing-key}")
     private String routingKey;
@@ -54,17 +73,63 @@ public class QueueManagementConfig {
     @PostConstruct
     public void postConstruct() {
         log.info("QueueManagementConfig inicializado pelo Spring");
-        log.info("Queue: " + queueName);
+        log.info("Queue: " + queueName + " (shards: " + queueSharding.getShards() + ")");
         log.info("Exchange: " + exchangeName);
         log.info("Routing Key: " + routingKey);
     }
 
-    // Beans para configuração automática das filas
+    // Beans para configuração automática das filas: uma fila e um binding por shard
+    @Bean
+    public Declarables messageQueues() {
+        String exchange = messageExchange().getName();
+        List<Declarable> declarables = new ArrayList<>();
+        for (int shard = 0; shard < queueSharding.getShards(); shard++) {
+            Queue queue = messageQueue(queueSharding.queueName(shard));
+            declarables.add(queue);
+            declarables.add(new Binding(queue.getName(), Binding.DestinationType.QUEUE, exchange,
+                    queueSharding.bindingKey(shard), queueSharding.bindingArguments(shard)));
+        }
+        return new Declarables(declarables);
+    }
+
+    private Queue messageQueue(String name) {
+        QueueBuilder builder = queueDurable ? QueueBuilder.durable(name) : QueueBuilder.nonDurable(name);
+        // Rejeitada sem requeue ou expirada: vai para a DLQ em vez de ser descartada
+        builder.deadLetterExchange(retryTopology.deadLetterExchangeName());
+        if (messageTtlMs > 0) {
+            builder.ttl((int) Math.min(messageTtlMs, Integer.MAX_VALUE));
+        }
+        if (singleActiveConsumer) {
+            builder.singleActiveConsumer();
+        }
+        return builder.build();
+    }
+
+    // DLX + DLQ e, com retentativas habilitadas, a exchange de retentativa e uma fila de atraso por nível
     @Bean
-    public Queue messageQueue() {
-        return QueueBuilder.durable(queueName)
-                .withArgument("x-message-ttl", 60000)
-                .build();
+    public Declarables retryQueues() {
+        List<Declarable> declarables = new ArrayList<>();
+        FanoutExchange deadLetterExchange = new FanoutExchange(retryTopology.deadLetterExchangeName(), true, false);
+        Queue deadLetterQueue = QueueBuilder.durable(retryTopology.deadLetterQueueName()).build();
+        declarables.add(deadLetterExchange);
+        declarables.add(deadLetterQueue);
+        declarables.add(BindingBuilder.bind(deadLetterQueue).to(deadLetterExchange));
+
+        if (retryTopology.isEnabled()) {
+            HeadersExchange retryExchange = new HeadersExchange(retryTopology.retryExchangeName(), true, false);
+            declarables.add(retryExchange);
+            for (int delay : retryTopology.distinctDelays()) {
+                // Sem x-dead-letter-routing-key: a mensagem expirada volta com a routing key original
+                Queue delayQueue = QueueBuilder.durable(retryTopology.delayQueueName(delay))
+                        .ttl(delay)
+                        .deadLetterExchange(exchangeName)
+                        .build();
+                declarables.add(delayQueue);
+                declarables.add(new Binding(delayQueue.getName(), Binding.DestinationType.QUEUE,
+                        retryExchange.getName(), "", retryTopology.delayBindingArguments(delay)));
+            }
+        }
+        return new Declarables(declarables);
     }
 
     @Bean
@@ -78,19 +143,14 @@ public class QueueManagementConfig {
                 return new FanoutExchange(exchangeName, true, false);
             case "headers":
                 return new HeadersExchange(exchangeName, true, false);
+            case QueueSharding.CONSISTENT_HASH:
+                // Requer o plugin rabbitmq_consistent_hash_exchange no broker
+                return new CustomExchange(exchangeName, QueueSharding.CONSISTENT_HASH, true, false);
             default:
                 throw new IllegalArgumentException("Tipo de exchange inválido: " + exchangeType);
         }
     }
 
-    @Bean
-    public Binding messageBinding() {
-        return BindingBuilder
-                .bind(messageQueue())
-                .to((DirectExchange) messageExchange())
-                .with(routingKey);
-    }
-
     @Bean
     public RabbitAdmin rabbitAdmin() {
         return new RabbitAdmin(connectionFactory);
@@ -105,8 +165,12 @@ public class QueueManagementConfig {
 
             log.info("✅ RabbitMQ configurado com sucesso!");
             log.info("Exchange: " + exchangeName + " (tipo: " + exchangeType + ")");
-            log.info("Queue: " + queueName + " (durável: " + queueDurable + ")");
-            log.info("Binding: " + routingKey);
+            log.info("Queues: " + queueSharding.queueNames() + " (durável: " + queueDurable +
+                    ", consumidor ativo único: " + singleActiveConsumer + ")");
+            log.info("DLQ: " + retryTopology.deadLetterQueueName() + ", retentativas: " + (retryTopology.isEnabled() ?
+                    retryTopology.getMaxAttempts() + " (atrasos " + retryTopology.distinctDelays() + " ms)" : "desabilitadas"));
+            log.info("Binding: " + queueSharding.bindingKey(0) + (queueSharding.getShards() > 1 ? " ... " +
+                    queueSharding.bindingKey(queueSharding.getShards() - 1) : ""));
 
         } catch (Exception e) {
             log.error("❌ Erro ao configurar RabbitMQ: " + e.getMessage());
@@ -131,8 +195,9 @@ public class QueueManagementConfig {
     // Métodos utilitários para mensagens
     public void sendMessage(String message) {
         try {
-            rabbitTemplate.convertAndSend(exchangeName, routingKey, message);
-            log.info("📤 Mensagem enviada: " + message);
+            // Sem remetente: vai para o shard 0
+            rabbitTemplate.convertAndSend(exchangeName, queueSharding.bindingKey(0), message);
+            log.debug("📤 Mensagem enviada: {}", message);
         } catch (Exception e) {
             log.error("❌ Erro ao enviar mensagem: " + e.getMessage());
             throw e;
@@ -141,10 +206,12 @@ public class QueueManagementConfig {
 
     public String receiveMessage() {
         try {
-            Object message = rabbitTemplate.receiveAndConvert(queueName);
-            if (message != null) {
-                log.info("📥 Mensagem recebida: " + message);
-                return message.toString();
+            for (String shardQueue : queueSharding.queueNames()) {
+                Object message = rabbitTemplate.receiveAndConvert(shardQueue);
+                if (message != null) {
+                    log.debug("📥 Mensagem recebida: {}", message);
+                    return message.toString();
+                }
             }
             return null;
         } catch (Exception e) {
@@ -0,0 +1,132 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Particionamento da fila de mensagens por remetente. Com queue.message.shards=N são declaradas
+ * N filas (message-queue.0 ... message-queue.N-1) e cada remetente cai sempre na mesma fila,
+ * o que preserva a ordem das mensagens de um remetente com um único consumidor por fila.
+ * Com N=1 os nomes continuam os originais (message-queue / message.routing).
+ *
+ * A escolha da fila depende do tipo da exchange:
+ * direct/topic usam jump consistent hash do remetente na aplicação e uma routing key por shard;
+ * headers usa o mesmo hash, enviado no header message-shard; x-consistent-hash (plugin do RabbitMQ)
+ * deixa o hash com o broker, usando o remetente como routing key.
+ */
+@Component
+public class QueueSharding {
+
+    // Sem prefixo x-: o RabbitMQ ignora headers x-* no match da exchange headers
+    static final String SHARD_HEADER = "message-shard";
+    static final String CONSISTENT_HASH = "x-consistent-hash";
+
+    private final String queueName;
+    private final String routingKey;
+    private final String exchangeType;
+    private final int shards;
+
+    public QueueSharding(@Value("${queue.message.name}") String queueName,
+                         @Value("${queue.message.routing-key}") String routingKey,
+                         @Value("${exchange.message.type}") String exchangeType,
+                         @Value("${queue.message.shards:1}") int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("queue.message.shards deve ser pelo menos 1");
+        }
+        if (shards > 1 && "fanout".equalsIgnoreCase(exchangeType)) {
+            throw new IllegalArgumentException("exchange fanout não particiona: cada shard receberia todas as mensagens");
+        }
+        this.queueName = queueName;
+        this.routingKey = routingKey;
+        this.exchangeType = exchangeType.toLowerCase();
+        this.shards = shards;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public String queueName(int shard) {
+        return shards == 1 ? queueName : queueName + "." + shard;
+    }
+
+    public List<String> queueNames() {
+        List<String> names = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            names.add(queueName(shard));
+        }
+        return names;
+    }
+
+    /**
+     * Chave do binding da fila do shard. Na exchange x-consistent-hash a chave é o peso da fila no anel.
+     */
+    public String bindingKey(int shard) {
+        if (CONSISTENT_HASH.equals(exchangeType)) {
+            return "1";
+        }
+        return shards == 1 ? routingKey : routingKey + "." + shard;
+    }
+
+    public Map<String, Object> bindingArguments(int shard) {
+        if (usesShardHeader()) {
+            return Map.of("x-match", "all", SHARD_HEADER, shard);
+        }
+        return Map.of();
+    }
+
+    public boolean usesShardHeader() {
+        return "headers".equals(exchangeType);
+    }
+
+    /**
+     * Routing key de publicação da mensagem.
+     */
+    public String routingKey(Message message) {
+        if (CONSISTENT_HASH.equals(exchangeType)) {
+            return message.getSender() == null ? "" : message.getSender();
+        }
+        return bindingKey(shardOf(message.getSender()));
+    }
+
+    public int shardOf(String sender) {
+        return shardOf(sender, shards);
+    }
+
+    /**
+     * Shard do remetente entre {@code buckets} partições. Também escolhe a partição do outbox,
+     * para que as entradas de um remetente fiquem em uma só partição ordenada por tempo.
+     */
+    static int shardOf(String sender, int buckets) {
+        if (buckets == 1 || sender == null) {
+            return 0;
+        }
+        return jumpHash(mix(sender.hashCode()), buckets);
+    }
+
+    // Finalizador do MurmurHash3: espalha o hashCode de 32 bits pelos 64 bits usados no jump hash
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // Jump consistent hash (Lamping e Veach): ao passar de N para N+1 shards só ~1/(N+1) dos remetentes muda de fila
+    static int jumpHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+}
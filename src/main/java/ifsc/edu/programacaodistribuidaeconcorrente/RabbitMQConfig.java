@@ -1,25 +1,40 @@
 package ifsc.edu.programacaodistribuidaeconcorrente;
 
-
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+@Slf4j
 @Configuration
 public class RabbitMQConfig {
 
+    // json (padrão, compatível com consumidores antigos) ou binary (BinaryMessageCodec)
+    @Value("${amqp.codec:json}")
+    private String codec;
+
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter messageConverter() {
+        boolean binary = "binary".equalsIgnoreCase(codec);
+        log.info("Codec AMQP: " + (binary ? "binário" : "json"));
+        return new NegotiatingMessageConverter(new Jackson2JsonMessageConverter(), binary);
     }
 
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, PayloadCompressor payloadCompressor) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(jsonMessageConverter());
+        template.setMessageConverter(messageConverter());
+        // Compressão por limiar na publicação e descompressão transparente no receive
+        template.setBeforePublishPostProcessors(payloadCompressor.compressingPostProcessor());
+        template.setAfterReceivePostProcessors(payloadCompressor.decompressingPostProcessor());
+        // Mensagens sem rota voltam para o publisher em vez de serem descartadas pelo broker
+        template.setMandatory(true);
+        template.setReturnsCallback(returned -> log.warn("⚠️ Mensagem retornada pelo broker: {} (exchange: {}, routing key: {})",
+                returned.getReplyText(), returned.getExchange(), returned.getRoutingKey()));
         return template;
     }
 }
\ No newline at end of file
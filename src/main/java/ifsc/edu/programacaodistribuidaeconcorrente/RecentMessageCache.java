@@ -0,0 +1,301 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * Cache em processo das mensagens recentes, global e por remetente.
+ * É alimentado pelo caminho de escrita do /api/send e funciona como read-through
+ * para "últimas N do remetente". Limites: entradas no anel global, número de remetentes
+ * e bytes estimados (LRU por remetente), além de TTL por remetente.
+ * Assume que as escritas do remetente passam por esta instância; o TTL limita
+ * a defasagem quando isso não é verdade.
+ * Guarda cópias próprias das mensagens (só alteradas sob o lock) e devolve cópias
+ * aos chamadores, que podem alterá-las sem afetar o cache.
+ */
+@Slf4j
+@Component
+public class RecentMessageCache {
+
+    @Getter
+    private final boolean enabled;
+    private final int globalEntries;
+    private final int perSenderEntries;
+    private final int maxSenders;
+    private final long maxBytes;
+    private final long ttlMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Message> global = new ArrayDeque<>();
+    private final LinkedHashMap<String, SenderEntry> senders = new LinkedHashMap<>(16, 0.75f, true);
+    private long globalBytes;
+    private long senderBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class SenderEntry {
+        // Mais recente primeiro
+        final ArrayDeque<Message> messages = new ArrayDeque<>();
+        long bytes;
+        long loadedAt;
+        // true quando a lista contém todas as mensagens recentes do remetente (a leitura trouxe menos que o pedido)
+        boolean exhaustive;
+    }
+
+    public RecentMessageCache(@Value("${cache.recent.enabled:true}") boolean enabled,
+                              @Value("${cache.recent.global-entries:1000}") int globalEntries,
+                              @Value("${cache.recent.per-sender-entries:100}") int perSenderEntries,
+                              @Value("${cache.recent.max-senders:10000}") int maxSenders,
+                              @Value("${cache.recent.max-bytes:67108864}") long maxBytes,
+                              @Value("${cache.recent.ttl-ms:300000}") long ttlMs) {
+        this.enabled = enabled;
+        this.globalEntries = globalEntries;
+        this.perSenderEntries = perSenderEntries;
+        this.maxSenders = maxSenders;
+        this.maxBytes = maxBytes;
+        this.ttlMs = ttlMs;
+        log.info("Cache de mensagens recentes: " + (enabled ? "global " + globalEntries + ", por remetente " +
+                perSenderEntries + ", " + maxSenders + " remetentes, " + maxBytes + " bytes, TTL " + ttlMs + "ms" : "desabilitado"));
+    }
+
+    /**
+     * Registra uma mensagem recém-enviada (caminho de escrita).
+     */
+    public void put(Message message) {
+        if (!enabled) {
+            return;
+        }
+        // A mesma cópia fica no anel global e na lista do remetente, então updateStatus vale para os dois
+        Message cached = copy(message);
+        lock.lock();
+        try {
+            global.addFirst(cached);
+            globalBytes += estimateBytes(cached);
+
+            SenderEntry entry = senders.get(message.getSender());
+            if (entry == null) {
+                entry = new SenderEntry();
+                entry.loadedAt = System.currentTimeMillis();
+                senders.put(message.getSender(), entry);
+            }
+            addFirst(entry, cached);
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Últimas {@code limit} mensagens do remetente. Em caso de miss chama o loader
+     * (sender, quantidade) e guarda o resultado.
+     */
+    public List<Message> getLatestBySender(String sender, int limit,
+                                           BiFunction<String, Integer, List<Message>> loader) {
+        if (!enabled) {
+            return loader.apply(sender, limit);
+        }
+        lock.lock();
+        try {
+            SenderEntry entry = senders.get(sender);
+            if (entry != null && System.currentTimeMillis() - entry.loadedAt <= ttlMs
+                    && (entry.exhaustive || entry.messages.size() >= limit)) {
+                hits.increment();
+                return firstN(entry.messages, limit);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Carrega fora do lock para não serializar as leituras no Cassandra
+        misses.increment();
+        int toLoad = Math.max(limit, perSenderEntries);
+        List<Message> loaded = loader.apply(sender, toLoad);
+
+        lock.lock();
+        try {
+            SenderEntry entry = new SenderEntry();
+            entry.loadedAt = System.currentTimeMillis();
+            entry.exhaustive = loaded.size() < toLoad;
+            for (Message message : loaded) {
+                if (entry.messages.size() >= perSenderEntries) {
+                    entry.exhaustive = false;
+                    break;
+                }
+                Message cached = copy(message);
+                entry.messages.addLast(cached);
+                entry.bytes += estimateBytes(cached);
+            }
+            SenderEntry previous = senders.put(sender, entry);
+            if (previous != null) {
+                senderBytes -= previous.bytes;
+                // Preserva escritas que chegaram durante a leitura no Cassandra
+                long newest = loaded.isEmpty() ? Long.MIN_VALUE : loaded.get(0).getTimestamp();
+                Iterator<Message> older = previous.messages.descendingIterator();
+                while (older.hasNext()) {
+                    Message message = older.next();
+                    if (message.getTimestamp() > newest) {
+                        entry.messages.addFirst(message);
+                        entry.bytes += estimateBytes(message);
+                    }
+                }
+                while (entry.messages.size() > perSenderEntries) {
+                    entry.bytes -= estimateBytes(entry.messages.removeLast());
+                    entry.exhaustive = false;
+                }
+            }
+            senderBytes += entry.bytes;
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+        return loaded.size() > limit ? new ArrayList<>(loaded.subList(0, limit)) : loaded;
+    }
+
+    /**
+     * Mensagens mais recentes vistas por esta instância, ou null se o anel global
+     * ainda não tem {@code limit} mensagens.
+     */
+    public List<Message> getRecent(int limit) {
+        if (!enabled) {
+            return null;
+        }
+        lock.lock();
+        try {
+            if (global.size() < limit) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return firstN(global, limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Mantém o status das mensagens em cache alinhado com as atualizações do consumidor.
+     */
+    public void updateStatus(String sender, UUID id, String status) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            SenderEntry entry = senders.get(sender);
+            if (entry == null) {
+                return;
+            }
+            for (Message message : entry.messages) {
+                if (message.getId().equals(id)) {
+                    // Como no Cassandra, um delivered atrasado não desfaz o status final
+                    if (!isTerminal(message.getStatus())) {
+                        message.setStatus(status);
+                    }
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isTerminal(String status) {
+        return MessageStatus.ACKNOWLEDGED.value().equals(status) || MessageStatus.FAILED.value().equals(status);
+    }
+
+    private void addFirst(SenderEntry entry, Message message) {
+        entry.messages.addFirst(message);
+        long bytes = estimateBytes(message);
+        entry.bytes += bytes;
+        senderBytes += bytes;
+        if (entry.messages.size() > perSenderEntries) {
+            long removed = estimateBytes(entry.messages.removeLast());
+            entry.bytes -= removed;
+            senderBytes -= removed;
+            entry.exhaustive = false;
+        }
+    }
+
+    // Limita o anel global por entradas e pelo orçamento de bytes; depois remove remetentes menos usados
+    // até que anel e remetentes juntos respeitem os limites de remetentes e de bytes
+    private void evictIfNeeded() {
+        while (!global.isEmpty() && (global.size() > globalEntries || globalBytes > maxBytes)) {
+            globalBytes -= estimateBytes(global.removeLast());
+        }
+        Iterator<Map.Entry<String, SenderEntry>> iterator = senders.entrySet().iterator();
+        while ((senders.size() > maxSenders || senderBytes + globalBytes > maxBytes) && iterator.hasNext()) {
+            SenderEntry eldest = iterator.next().getValue();
+            senderBytes -= eldest.bytes;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static List<Message> firstN(ArrayDeque<Message> messages, int limit) {
+        List<Message> result = new ArrayList<>(Math.min(limit, messages.size()));
+        for (Message message : messages) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(copy(message));
+        }
+        return result;
+    }
+
+    private static Message copy(Message message) {
+        return new Message(message.getId(), message.getSender(), message.getContent(),
+                message.getTimestamp(), message.getStatus());
+    }
+
+    // Estimativa do custo em heap: cabeçalhos dos objetos + chars (Latin-1 compacto ou UTF-16).
+    // O status fica de fora: é sempre uma constante compartilhada e muda em updateStatus, o que
+    // desalinharia os totais entre a inserção e a remoção
+    static long estimateBytes(Message message) {
+        return 96 + length(message.getSender()) + length(message.getContent());
+    }
+
+    private static long length(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long total = hits.sum() + misses.sum();
+        return total == 0 ? 0.0 : hits.sum() / (double) total;
+    }
+
+    public long getEstimatedBytes() {
+        lock.lock();
+        try {
+            return senderBytes + globalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nomes e atrasos da topologia de retentativa e de mensagens mortas.
+ *
+ * Retentativa: a mensagem com falha é republicada na exchange headers {@code <exchange>.retry}
+ * com o header retry-delay, que a leva à fila de atraso do nível ({@code <fila>.retry.<atraso>}).
+ * Cada fila de atraso tem x-message-ttl igual ao atraso e devolve a mensagem expirada à exchange
+ * principal. Como a routing key original é mantida, a mensagem volta ao mesmo shard.
+ * Os atrasos crescem exponencialmente: initial-delay-ms * multiplier^tentativa, limitados a max-delay-ms.
+ *
+ * Mensagens mortas: as filas principais têm x-dead-letter-exchange {@code <exchange>.dlx}, ligada à
+ * fila {@code <fila>.dlq}. Mensagens rejeitadas sem requeue, inválidas, com as retentativas esgotadas
+ * ou expiradas pelo queue.message.ttl-ms vão para essa fila, e não são descartadas.
+ */
+@Component
+public class RetryTopology {
+
+    // Sem prefixo x-: o RabbitMQ ignora headers x-* no match da exchange headers
+    static final String DELAY_HEADER = "retry-delay";
+    static final String ATTEMPT_HEADER = "retry-attempt";
+
+    private final String queueName;
+    private final String exchangeName;
+    private final boolean enabled;
+    private final List<Integer> delays;
+
+    public RetryTopology(@Value("${queue.message.name}") String queueName,
+                         @Value("${exchange.message.name}") String exchangeName,
+                         @Value("${retry.enabled:true}") boolean enabled,
+                         @Value("${retry.max-attempts:4}") int maxAttempts,
+                         @Value("${retry.initial-delay-ms:1000}") long initialDelayMs,
+                         @Value("${retry.multiplier:4}") double multiplier,
+                         @Value("${retry.max-delay-ms:300000}") long maxDelayMs) {
+        if (enabled && (maxAttempts < 1 || initialDelayMs < 1 || multiplier < 1)) {
+            throw new IllegalArgumentException("retry.max-attempts e retry.initial-delay-ms devem ser positivos e retry.multiplier >= 1");
+        }
+        this.queueName = queueName;
+        this.exchangeName = exchangeName;
+        this.enabled = enabled;
+        List<Integer> tiers = new ArrayList<>();
+        if (enabled) {
+            double delay = initialDelayMs;
+            for (int attempt = 0; attempt < maxAttempts; attempt++) {
+                int tier = (int) Math.min(Math.min(delay, maxDelayMs), Integer.MAX_VALUE);
+                // Níveis repetidos (atraso já no máximo) compartilham a mesma fila
+                tiers.add(tier);
+                delay *= multiplier;
+            }
+        }
+        this.delays = Collections.unmodifiableList(tiers);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxAttempts() {
+        return delays.size();
+    }
+
+    /**
+     * Atraso da tentativa (1 = primeira retentativa).
+     */
+    public int delayFor(int attempt) {
+        return delays.get(attempt - 1);
+    }
+
+    /**
+     * Atrasos distintos, um por fila de atraso.
+     */
+    public List<Integer> distinctDelays() {
+        return delays.stream().distinct().toList();
+    }
+
+    public String retryExchangeName() {
+        return exchangeName + ".retry";
+    }
+
+    public String delayQueueName(int delayMs) {
+        return queueName + ".retry." + delayMs;
+    }
+
+    public Map<String, Object> delayBindingArguments(int delayMs) {
+        return Map.of("x-match", "all", DELAY_HEADER, delayMs);
+    }
+
+    public String deadLetterExchangeName() {
+        return exchangeName + ".dlx";
+    }
+
+    public String deadLetterQueueName() {
+        return queueName + ".dlq";
+    }
+
+    public String mainExchangeName() {
+        return exchangeName;
+    }
+}
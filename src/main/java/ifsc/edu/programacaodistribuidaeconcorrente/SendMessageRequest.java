@@ -0,0 +1,31 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Corpo de POST /api/send e de cada item de POST /api/send/batch.
+ * Campos numéricos são aceitos como texto, como no corpo genérico de antes.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SendMessageRequest(String sender,
+                                 String message,
+                                 @JsonProperty("idempotency_key") String idempotencyKey) {
+
+    public static final String DEFAULT_SENDER = "Anônimo";
+
+    public SendMessageRequest {
+        if (sender == null) {
+            sender = DEFAULT_SENDER;
+        }
+    }
+
+    /**
+     * Lança IllegalArgumentException se o corpo não tem o conteúdo da mensagem.
+     */
+    public void validate() {
+        if (message == null) {
+            throw new IllegalArgumentException("campo 'message' obrigatório");
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import lombok.Getter;
+
+/**
+ * Estágio do envio (reserva da chave de idempotência ou escrita no Cassandra) que não completou no prazo.
+ */
+@Getter
+public class SendStageTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String stage;
+
+    public SendStageTimeoutException(String stage, long timeoutMs) {
+        super("Estágio " + stage + " não completou em " + timeoutMs + "ms");
+        this.stage = stage;
+    }
+}
@@ -1,79 +1,376 @@
 package ifsc.edu.programacaodistribuidaeconcorrente;
 
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.AmqpResourceNotAvailableException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @RestController
 @RequestMapping("/api")
 public class SimpleMessageController {
 
-    private final RabbitTemplate rabbitTemplate;
     private final MessageRepository messageRepository;
-    private final String exchangeName;
-    private final String routingKey;
+    private final WriteBehindMessageWriter messageWriter;
+    private final MessageConsumer messageConsumer;
+    private final MessagePublisher messagePublisher;
+    private final OutboxRelay outboxRelay;
+    private final PayloadCompressor payloadCompressor;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageBatchIngestor batchIngestor;
+    private final AdmissionControl admissionControl;
+    private final IdempotencyGuard idempotencyGuard;
+    private final MessageStatusCounters statusCounters;
+    private final MessageRetrier messageRetrier;
+    private final MessageSpool messageSpool;
+    private final ObjectMapper objectMapper;
+
+    @Value("${api.receive.default-limit:100}")
+    private int defaultPageSize;
+
+    @Value("${api.receive.max-limit:1000}")
+    private int maxPageSize;
+
+    @Value("${api.receive.stream-page-size:500}")
+    private int streamPageSize;
+
+    // Timeouts por estágio do POST /api/send (o do confirm é o publisher.confirm-timeout-ms)
+    @Value("${api.send.idempotency-timeout-ms:1000}")
+    private long idempotencyTimeoutMs;
+
+    @Value("${api.send.persist-timeout-ms:2000}")
+    private long persistTimeoutMs;
+
+    private static final String STAGE_IDEMPOTENCY = "idempotency";
+    private static final String STAGE_PERSIST = "persist";
+
+    // Continuações que saem da thread de I/O do driver (depois da LWT) e podem publicar no broker
+    private final TaskExecutor sendExecutor;
 
     @Autowired
-    public SimpleMessageController(RabbitTemplate rabbitTemplate,
-                                   MessageRepository messageRepository,
-                                   @Value("${exchange.message.name}") String exchangeName,
-                                   @Value("${queue.message.routing-key}") String routingKey) {
-        this.rabbitTemplate = rabbitTemplate;
+    public SimpleMessageController(MessageRepository messageRepository,
+                                   WriteBehindMessageWriter messageWriter,
+                                   MessageConsumer messageConsumer,
+                                   MessagePublisher messagePublisher,
+                                   OutboxRelay outboxRelay,
+                                   PayloadCompressor payloadCompressor,
+                                   RecentMessageCache recentMessageCache,
+                                   MessageBatchIngestor batchIngestor,
+                                   AdmissionControl admissionControl,
+                                   IdempotencyGuard idempotencyGuard,
+                                   MessageStatusCounters statusCounters,
+                                   MessageRetrier messageRetrier,
+                                   MessageSpool messageSpool,
+                                   MessagingThreads messagingThreads,
+                                   ObjectMapper objectMapper) {
         this.messageRepository = messageRepository;
-        this.exchangeName = exchangeName;
-        this.routingKey = routingKey;
+        this.messageWriter = messageWriter;
+        this.messageConsumer = messageConsumer;
+        this.messagePublisher = messagePublisher;
+        this.outboxRelay = outboxRelay;
+        this.payloadCompressor = payloadCompressor;
+        this.recentMessageCache = recentMessageCache;
+        this.batchIngestor = batchIngestor;
+        this.admissionControl = admissionControl;
+        this.idempotencyGuard = idempotencyGuard;
+        this.statusCounters = statusCounters;
+        this.messageRetrier = messageRetrier;
+        this.messageSpool = messageSpool;
+        this.objectMapper = objectMapper;
+        this.sendExecutor = messagingThreads.taskExecutor("send-");
     }
 
+    /**
+     * Envio não bloqueante: a thread do servlet só valida, admite e dispara o primeiro estágio.
+     * A reserva da chave de idempotência, o confirm do broker e a escrita no Cassandra são
+     * encadeados como futures, cada um com o seu timeout, e a resposta é escrita quando o último completa.
+     */
     @PostMapping("/send")
-    public ResponseEntity<Map<String, Object>> sendMessage(@RequestBody Map<String, Object> request) {
+    public CompletableFuture<ResponseEntity<?>> sendMessage(@RequestBody SendMessageRequest request,
+                                                            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        String sender = request.sender();
+        AdmissionControl.Permit permit;
         try {
-            Message message = new Message(
-                    UUID.randomUUID(),
-                    request.getOrDefault("sender", "Anônimo").toString(),
-                    request.get("message").toString(),
-                    System.currentTimeMillis(),
-                    "sent"
-            );
-
-            // Envia para RabbitMQ
-            rabbitTemplate.convertAndSend(exchangeName, routingKey, message);
-            log.info("📤 Mensagem enviada para RabbitMQ: {}", message);
-
-            // Salva no Cassandra
-            messageRepository.saveMessage(message);
-            log.info("💾 Mensagem salva no Cassandra: {}", message.getId());
+            permit = admissionControl.admit(sender);
+        } catch (AdmissionRejectedException e) {
+            return CompletableFuture.completedFuture(tooManyRequests(e));
+        }
 
-            return ResponseEntity.ok(Map.of(
-                    "status", "sent",
-                    "message", "Mensagem enviada com sucesso!",
-                    "message_id", message.getId().toString()
+        // Reserva feita; liberada em sendFailure se um estágio seguinte falhar
+        AtomicReference<IdempotencyGuard.Claim> claim = new AtomicReference<>();
+        CompletableFuture<ResponseEntity<?>> response;
+        try {
+            request.validate();
+            Message message = newMessage(request);
+            response = claimIdempotencyKey(sender, idempotencyKey, request, message)
+                    .thenCompose(reserved -> {
+                        claim.set(reserved);
+                        if (reserved != null && reserved.duplicate()) {
+                            // Retry de um envio já aceito: responde com o id original sem publicar nem gravar
+                            log.debug("Envio repetido da chave {} (mensagem {})", reserved.key(), reserved.messageId());
+                            return CompletableFuture.<ResponseEntity<?>>completedFuture(ResponseEntity.ok(new ApiResponses.Sent(
+                                    "duplicate", "Mensagem já recebida", reserved.messageId().toString())));
+                        }
+                        if (messageSpool.hasBacklog()) {
+                            // Spool com mensagens pendentes: o envio entra atrás delas para manter a ordem
+                            return CompletableFuture.completedFuture(spool(message, reserved, spoolKind(false)));
+                        }
+                        AtomicBoolean published = new AtomicBoolean();
+                        return deliver(message, published).<ResponseEntity<?>>thenApply(ignored -> {
+                            recentMessageCache.put(message);
+                            idempotencyGuard.confirm(reserved);
+                            statusCounters.record(sender, MessageStatus.SENT);
+                            return ResponseEntity.ok(new ApiResponses.Sent(MessageStatus.SENT.value(),
+                                    "Mensagem enviada com sucesso!", message.getId().toString()));
+                        }).exceptionally(error -> spoolOrRethrow(error, message, reserved, published.get()));
+                    })
+                    .exceptionally(error -> sendFailure(error, claim.get()));
+        } catch (RuntimeException e) {
+            response = CompletableFuture.completedFuture(sendFailure(e, null));
+        }
+        response.whenComplete((ignored, error) -> permit.close());
+        return response;
+    }
+
+    private CompletableFuture<Void> deliver(Message message, AtomicBoolean published) {
+        if (outboxRelay.isEnabled()) {
+            // Modo outbox: uma única escrita no Cassandra; o relay publica no RabbitMQ
+            return withTimeout(messageRepository.saveWithOutboxAsync(message), STAGE_PERSIST, persistTimeoutMs)
+                    .thenRun(() -> log.debug("💾 Mensagem salva no Cassandra com outbox: {}", message.getId()));
+        }
+        // Envia para RabbitMQ; o timeout do confirm é o publisher.confirm-timeout-ms
+        return messagePublisher.tryPublish(message)
+                .exceptionally(error -> {
+                    if (unwrap(error) instanceof TimeoutException) {
+                        throw new MessagePublishException(message.getId().toString(), "timeout aguardando confirmação");
+                    }
+                    throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+                })
+                .thenCompose(ignored -> {
+                    published.set(true);
+                    log.debug("📤 Mensagem enviada para RabbitMQ: {}", message.getId());
+                    // Salva no Cassandra (direto ou via fila de write-behind)
+                    return withTimeout(messageWriter.submitAsync(message), STAGE_PERSIST, persistTimeoutMs);
+                })
+                .thenRun(() -> log.debug("💾 Mensagem encaminhada para o Cassandra: {}", message.getId()));
+    }
+
+    // Entrega falhou: com o spool habilitado a mensagem é aceita (202) e entregue quando o destino voltar
+    private ResponseEntity<?> spoolOrRethrow(Throwable error, Message message, IdempotencyGuard.Claim claim,
+                                             boolean published) {
+        CompletionException failure = error instanceof CompletionException completion ? completion : new CompletionException(error);
+        if (!messageSpool.isEnabled() || unwrap(error) instanceof IllegalArgumentException) {
+            throw failure;
+        }
+        try {
+            return spool(message, claim, spoolKind(published));
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Mensagem {} não gravada no spool: {}", message.getId(), e.getMessage());
+            throw failure;
+        }
+    }
+
+    private ResponseEntity<?> spool(Message message, IdempotencyGuard.Claim claim, MessageSpool.Kind kind) {
+        messageSpool.append(kind, message);
+        idempotencyGuard.confirm(claim);
+        log.debug("💽 Mensagem gravada no spool ({}): {}", kind, message.getId());
+        return ResponseEntity.accepted().body(new ApiResponses.Sent("spooled",
+                "Mensagem aceita, será entregue quando o destino voltar", message.getId().toString()));
+    }
+
+    private MessageSpool.Kind spoolKind(boolean published) {
+        if (outboxRelay.isEnabled()) {
+            return MessageSpool.Kind.OUTBOX;
+        }
+        return published ? MessageSpool.Kind.PERSIST : MessageSpool.Kind.SEND;
+    }
+
+    private ResponseEntity<?> sendFailure(Throwable error, IdempotencyGuard.Claim claim) {
+        idempotencyGuard.release(claim);
+        Throwable cause = unwrap(error);
+        if (cause instanceof IllegalArgumentException) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", String.valueOf(cause.getMessage())
+            ));
+        }
+        if (cause instanceof IdempotencyKeyInProgressException e) {
+            // Envio original ainda sem resultado: o cliente deve repetir depois, e não tratar como aceito
+            log.debug("Chave de idempotência em andamento: {}", e.getKey());
+            return ResponseEntity.status(409).body(Map.of(
+                    "status", "error",
+                    "message", "Envio com a mesma chave ainda em andamento, tente novamente",
+                    "idempotency_key", e.getKey()
+            ));
+        }
+        if (cause instanceof MessagePublishException e) {
+            log.warn("⚠️ Publicação não confirmada: {}", e.getMessage());
+            return ResponseEntity.status(503).body(Map.of(
+                    "status", "error",
+                    "message", "Mensagem não confirmada pelo broker",
+                    "message_id", e.getMessageId(),
+                    "error", e.getMessage()
+            ));
+        }
+        if (cause instanceof WriteBehindFullException || cause instanceof AmqpResourceNotAvailableException
+                || cause instanceof SpoolFullException) {
+            // Fila de write-behind cheia, canais do broker esgotados (channelMax) ou spool cheio
+            log.warn("⚠️ Sem capacidade para o envio: {}", cause.getMessage());
+            return ResponseEntity.status(503).body(Map.of(
+                    "status", "error",
+                    "message", "Servidor sobrecarregado, tente novamente",
+                    "error", String.valueOf(cause.getMessage())
+            ));
+        }
+        if (cause instanceof SendStageTimeoutException e) {
+            log.warn("⚠️ Timeout no envio: {}", e.getMessage());
+            return ResponseEntity.status(504).body(Map.of(
+                    "status", "error",
+                    "message", "Tempo esgotado ao processar mensagem",
+                    "stage", e.getStage(),
+                    "error", e.getMessage()
             ));
+        }
+        log.error("❌ Erro ao processar mensagem: {}", cause.getMessage());
+        return ResponseEntity.status(500).body(Map.of(
+                "status", "error",
+                "message", "Falha ao processar mensagem",
+                "error", String.valueOf(cause.getMessage())
+        ));
+    }
+
+    // Limita o estágio a timeoutMs; o timeout vira SendStageTimeoutException com o nome do estágio
+    private static <T> CompletableFuture<T> withTimeout(CompletionStage<T> stage, String name, long timeoutMs) {
+        return stage.toCompletableFuture().copy()
+                .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .exceptionally(error -> {
+                    throw stageFailure(error, name, timeoutMs);
+                });
+    }
+
+    private static CompletionException stageFailure(Throwable error, String name, long timeoutMs) {
+        if (unwrap(error) instanceof TimeoutException) {
+            return new CompletionException(new SendStageTimeoutException(name, timeoutMs));
+        }
+        return error instanceof CompletionException completion ? completion : new CompletionException(error);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Envio em lote: aceita um array JSON ou NDJSON (um objeto por linha), lido de forma incremental.
+     * Retorna o id e o status de cada item na ordem do corpo; falhas individuais não interrompem o lote.
+     */
+    @PostMapping(value = "/send/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public ResponseEntity<Map<String, Object>> sendBatch(InputStream body) {
+        AdmissionControl.Permit permit;
+        try {
+            permit = admissionControl.admitRequest();
+        } catch (AdmissionRejectedException e) {
+            return tooManyRequests(e);
+        }
+        try {
+            MessageBatchIngestor.BatchResult result = batchIngestor.ingest(body);
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("status", result.error() != null ? "error" : result.failed() == 0 ? "sent" : "partial");
+            response.put("count", result.items().size());
+            response.put("sent", result.sent());
+            response.put("failed", result.failed());
+            if (result.error() != null) {
+                response.put("error", result.error());
+            }
+            response.put("results", result.items());
+            return result.error() != null ? ResponseEntity.badRequest().body(response) : ResponseEntity.ok(response);
         } catch (Exception e) {
-            log.error("❌ Erro ao processar mensagem: {}", e.getMessage());
+            log.error("❌ Erro ao processar lote: {}", e.getMessage());
             return ResponseEntity.status(500).body(Map.of(
                     "status", "error",
-                    "message", "Falha ao processar mensagem",
-                    "error", e.getMessage()
+                    "message", "Falha ao processar lote",
+                    "error", String.valueOf(e.getMessage())
             ));
+        } finally {
+            permit.close();
+        }
+    }
+
+    // Chave do header Idempotency-Key ou do campo idempotency_key; null sem chave ou com a verificação desabilitada.
+    // Quando a LWT é necessária, os estágios seguintes continuam no sendExecutor, fora da thread de I/O do driver
+    private CompletableFuture<IdempotencyGuard.Claim> claimIdempotencyKey(String sender, String headerKey,
+                                                                         SendMessageRequest request, Message message) {
+        String key = headerKey != null ? headerKey : request.idempotencyKey();
+        if (key == null || !idempotencyGuard.isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<IdempotencyGuard.Claim> claim = idempotencyGuard.claimAsync(sender, key, message.getId(),
+                idempotencyTimeoutMs);
+        if (claim.isDone()) {
+            return claim;
         }
+        return claim.exceptionally(error -> {
+                    throw stageFailure(error, STAGE_IDEMPOTENCY, idempotencyTimeoutMs);
+                })
+                .thenApplyAsync(reserved -> reserved, sendExecutor);
+    }
+
+    // 429 com Retry-After: o cliente deve reduzir o ritmo em vez de repetir imediatamente
+    private static ResponseEntity<Map<String, Object>> tooManyRequests(AdmissionRejectedException e) {
+        log.debug("Requisição recusada pelo controle de admissão: {}", e.getMessage());
+        return ResponseEntity.status(429)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Map.of(
+                        "status", "error",
+                        "message", "Requisição recusada, tente novamente mais tarde",
+                        "reason", e.getReason(),
+                        "error", e.getMessage()
+                ));
     }
 
+    /**
+     * Percorre todas as mensagens em páginas, na ordem dos tokens do Cassandra. O next_cursor retoma
+     * a varredura de onde a página parou, então nenhuma página pode vir do cache: ele não conhece a
+     * posição das mensagens no anel de tokens. Para consultar as mais recentes, use /api/receive/recent
+     * ou /api/messages/{sender}.
+     */
     @GetMapping("/receive")
-    public ResponseEntity<Map<String, Object>> receiveMessages() {
+    public ResponseEntity<?> receiveMessages(@RequestParam(name = "limit", required = false) Integer limit,
+                                             @RequestParam(name = "cursor", required = false) String cursor) {
         try {
-            List<Message> messages = messageRepository.getMessages();
-            return ResponseEntity.ok(Map.of(
-                    "status", "ok",
-                    "messages", messages.stream().map(this::convertToMap).collect(Collectors.toList()),
-                    "count", messages.size()
+            int pageSize = limit != null ? limit : defaultPageSize;
+            if (pageSize <= 0 || pageSize > maxPageSize) {
+                throw new IllegalArgumentException("limit deve estar entre 1 e " + maxPageSize);
+            }
+            return ResponseEntity.ok(new ApiResponses.MessagePage(messageRepository.getMessagesPage(pageSize, cursor)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", e.getMessage()
             ));
         } catch (Exception e) {
             log.error("❌ Erro ao recuperar mensagens: {}", e.getMessage());
@@ -84,13 +381,359 @@ public class SimpleMessageController {
         }
     }
 
-    private Map<String, Object> convertToMap(Message message) {
-        return Map.of(
-                "id", message.getId().toString(),
-                "sender", message.getSender(),
-                "message", message.getContent(),
-                "timestamp", message.getTimestamp(),
-                "status", message.getStatus()
+    /**
+     * Mensagens mais recentes aceitas por esta instância, servidas do cache em memória. O Cassandra
+     * não tem uma consulta de recência global (as partições são por remetente e dia), então com o
+     * cache frio a resposta é um miss explícito (cached=false, lista vazia), não uma varredura.
+     */
+    @GetMapping("/receive/recent")
+    public ResponseEntity<?> receiveRecentMessages(@RequestParam(name = "limit", defaultValue = "50") int limit) {
+        try {
+            if (limit <= 0 || limit > maxPageSize) {
+                throw new IllegalArgumentException("limit deve estar entre 1 e " + maxPageSize);
+            }
+            List<Message> messages = recentMessageCache.getRecent(limit);
+            return ResponseEntity.ok(messages != null
+                    ? ApiResponses.RecentMessages.hit(messages)
+                    : ApiResponses.RecentMessages.miss());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            log.error("❌ Erro ao recuperar mensagens recentes: {}", e.getMessage());
+            return ResponseEntity.status(500).body(Map.of(
+                    "status", "error",
+                    "message", "Falha ao recuperar mensagens"
+            ));
+        }
+    }
+
+    /**
+     * Transmite todas as mensagens em NDJSON (uma mensagem por linha), escrevendo cada
+     * página assim que chega do Cassandra. O uso de memória não depende do tamanho da tabela.
+     */
+    @GetMapping(value = "/receive/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamMessages(@RequestParam(name = "page_size", required = false) Integer pageSize) {
+        int size = pageSize != null ? pageSize : streamPageSize;
+        if (size <= 0 || size > maxPageSize) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = output -> {
+            // Um único gerador para toda a resposta; flush ao fim de cada página
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+                // O separador entre linhas é escrito manualmente em writeLine
+                generator.setRootValueSeparator(null);
+                messageRepository.forEachMessage(size,
+                        message -> writeLine(generator, message),
+                        () -> flush(generator));
+            } catch (UncheckedIOException e) {
+                // Cliente desconectou no meio da transmissão
+                log.debug("Transmissão NDJSON interrompida: {}", e.getMessage());
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    private void writeLine(JsonGenerator generator, Message message) {
+        try {
+            generator.writeObject(message);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void flush(JsonGenerator generator) {
+        try {
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @GetMapping("/messages/{sender}")
+    public ResponseEntity<?> receiveMessagesBySender(@PathVariable("sender") String sender,
+                                                     @RequestParam(name = "limit", defaultValue = "50") int limit,
+                                                     @RequestParam(name = "from", required = false) Long from,
+                                                     @RequestParam(name = "to", required = false) Long to) {
+        try {
+            if (limit <= 0 || limit > maxPageSize) {
+                throw new IllegalArgumentException("limit deve estar entre 1 e " + maxPageSize);
+            }
+            List<Message> messages;
+            if (from == null && to == null) {
+                messages = recentMessageCache.getLatestBySender(sender, limit, messageRepository::getLatestMessagesBySender);
+            } else {
+                long end = to != null ? to : System.currentTimeMillis();
+                long start = from != null ? from : end - Duration.ofDays(1).toMillis();
+                messages = messageRepository.getMessagesInRange(sender, start, end, limit);
+            }
+            return ResponseEntity.ok(new ApiResponses.MessageList(messages));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            log.error("❌ Erro ao recuperar mensagens de {}: {}", sender, e.getMessage());
+            return ResponseEntity.status(500).body(Map.of(
+                    "status", "error",
+                    "message", "Falha ao recuperar mensagens"
+            ));
+        }
+    }
+
+    /**
+     * Leva a mensagem a um status final, informado por quem a recebeu: acknowledged ou failed.
+     * O id precisa ser o timeuuid devolvido no envio.
+     */
+    @PostMapping("/messages/{sender}/{id}/status")
+    public ResponseEntity<Map<String, Object>> updateMessageStatus(@PathVariable("sender") String sender,
+                                                                   @PathVariable("id") String id,
+                                                                   @RequestBody StatusUpdateRequest request) {
+        try {
+            UUID messageId = UUID.fromString(id);
+            MessageStatus status = MessageStatus.fromValue(request.status());
+            MessageRepository.StatusUpdate update = messageRepository.finishStatus(sender, messageId, status);
+            if (update.currentStatus() == null) {
+                return ResponseEntity.status(404).body(Map.of(
+                        "status", "error",
+                        "message", "Mensagem não encontrada",
+                        "message_id", id
+                ));
+            }
+            if (!update.applied()) {
+                return ResponseEntity.status(409).body(Map.of(
+                        "status", "error",
+                        "message", "Mensagem já finalizada",
+                        "message_id", id,
+                        "message_status", update.currentStatus()
+                ));
+            }
+            recentMessageCache.updateStatus(sender, messageId, status.value());
+            statusCounters.record(sender, status);
+            return ResponseEntity.ok(Map.of(
+                    "status", "ok",
+                    "message_id", id,
+                    "message_status", status.value()
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", String.valueOf(e.getMessage())
+            ));
+        } catch (Exception e) {
+            log.error("❌ Erro ao atualizar status da mensagem {}: {}", id, e.getMessage());
+            return ResponseEntity.status(500).body(Map.of(
+                    "status", "error",
+                    "message", "Falha ao atualizar status"
+            ));
+        }
+    }
+
+    /**
+     * Contadores de mensagens por status. Os totais vêm da memória (último valor gravado mais
+     * incrementos pendentes); com sender, uma leitura da partição do remetente nas tabelas counter.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> stats(@RequestParam(name = "sender", required = false) String sender) {
+        try {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", "ok");
+            if (sender != null) {
+                body.put("sender", sender);
+                body.put("counts", statusCounters.getSenderCounts(sender));
+            } else {
+                body.put("counts", statusCounters.getTotals());
+            }
+            body.put("flushed_at", statusCounters.getLastFlushAt());
+            return ResponseEntity.ok(body);
+        } catch (Exception e) {
+            log.error("❌ Erro ao ler contadores de status: {}", e.getMessage());
+            return ResponseEntity.status(500).body(Map.of(
+                    "status", "error",
+                    "message", "Falha ao ler contadores"
+            ));
+        }
+    }
+
+    /**
+     * Mensagens no início da DLQ, com as tentativas feitas, sem removê-las da fila.
+     */
+    @GetMapping("/dlq")
+    public ResponseEntity<Map<String, Object>> deadLetters(@RequestParam(name = "limit", defaultValue = "20") int limit) {
+        if (limit < 1 || limit > maxPageSize) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", "limit deve estar entre 1 e " + maxPageSize
+            ));
+        }
+        try {
+            List<MessageRetrier.DeadLetter> deadLetters = messageRetrier.peek(limit);
+            return ResponseEntity.ok(Map.of(
+                    "status", "ok",
+                    "messages", deadLetters,
+                    "count", deadLetters.size()
+            ));
+        } catch (Exception e) {
+            log.error("❌ Erro ao ler a DLQ: {}", e.getMessage());
+            return ResponseEntity.status(500).body(Map.of(
+                    "status", "error",
+                    "message", "Falha ao ler a DLQ"
+            ));
+        }
+    }
+
+    /**
+     * Devolve até limit mensagens da DLQ à fila principal, com as tentativas zeradas.
+     */
+    @PostMapping("/dlq/replay")
+    public ResponseEntity<Map<String, Object>> replayDeadLetters(@RequestParam(name = "limit", defaultValue = "1000") int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", "limit deve ser positivo"
+            ));
+        }
+        try {
+            MessageRetrier.ReplayResult result = messageRetrier.replay(limit);
+            return ResponseEntity.ok(Map.of(
+                    "status", "ok",
+                    "replayed", result.replayed(),
+                    "failed", result.failed(),
+                    "remaining", result.remaining()
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of(
+                    "status", "error",
+                    "message", String.valueOf(e.getMessage())
+            ));
+        } catch (Exception e) {
+            log.error("❌ Erro ao reprocessar a DLQ: {}", e.getMessage());
+            return ResponseEntity.status(500).body(Map.of(
+                    "status", "error",
+                    "message", "Falha ao reprocessar a DLQ"
+            ));
+        }
+    }
+
+    @GetMapping("/dlq/stats")
+    public ResponseEntity<Map<String, Object>> deadLetterStats() {
+        return ResponseEntity.ok(Map.of(
+                "retry_enabled", messageRetrier.isEnabled(),
+                "dead_letter_queue_depth", messageRetrier.getDeadLetterCount(),
+                "retried", messageRetrier.getRetriedCount(),
+                "retry_failed", messageRetrier.getRetryFailedCount(),
+                "dead_lettered", messageRetrier.getDeadLetteredCount(),
+                "replayed", messageRetrier.getReplayedCount()
+        ));
+    }
+
+    @GetMapping("/spool/stats")
+    public ResponseEntity<Map<String, Object>> spoolStats() {
+        return ResponseEntity.ok(Map.of(
+                "enabled", messageSpool.isEnabled(),
+                "pending", messageSpool.getPendingCount(),
+                "disk_bytes", messageSpool.getDiskBytes(),
+                "spooled", messageSpool.getSpooledCount(),
+                "replayed", messageSpool.getReplayedCount(),
+                "replay_failed", messageSpool.getReplayFailedCount(),
+                "rejected", messageSpool.getRejectedCount()
+        ));
+    }
+
+    @GetMapping("/consumer/stats")
+    public ResponseEntity<Map<String, Object>> consumerStats() {
+        return ResponseEntity.ok(Map.of(
+                "consumed", messageConsumer.getConsumedCount(),
+                "failed", messageConsumer.getFailedCount(),
+                "consumed_per_second", messageConsumer.getConsumedPerSecond()
+        ));
+    }
+
+    @GetMapping("/publisher/stats")
+    public ResponseEntity<Map<String, Object>> publisherStats() {
+        return ResponseEntity.ok(Map.of(
+                "confirms_enabled", messagePublisher.isConfirmsEnabled(),
+                "in_flight", messagePublisher.getInFlight(),
+                "confirmed", messagePublisher.getConfirmedCount(),
+                "nacked", messagePublisher.getNackedCount(),
+                "avg_confirm_latency_ms", messagePublisher.getAverageConfirmLatencyMs()
+        ));
+    }
+
+    @GetMapping("/admission/stats")
+    public ResponseEntity<Map<String, Object>> admissionStats() {
+        return ResponseEntity.ok(Map.of(
+                "enabled", admissionControl.isEnabled(),
+                "admitted", admissionControl.getAdmittedCount(),
+                "rate_limited", admissionControl.getRateLimitedCount(),
+                "concurrency_rejected", admissionControl.getConcurrencyRejectedCount(),
+                "shed", admissionControl.getShedCount(),
+                "active_requests", admissionControl.getActiveRequests(),
+                "tracked_senders", admissionControl.getTrackedSenders()
+        ));
+    }
+
+    @GetMapping("/idempotency/stats")
+    public ResponseEntity<Map<String, Object>> idempotencyStats() {
+        return ResponseEntity.ok(Map.of(
+                "enabled", idempotencyGuard.isEnabled(),
+                "accepted", idempotencyGuard.getAcceptedCount(),
+                "cache_duplicates", idempotencyGuard.getCacheDuplicateCount(),
+                "verified_duplicates", idempotencyGuard.getVerifiedDuplicateCount(),
+                "lwt_verifications", idempotencyGuard.getVerificationCount(),
+                "cached_keys", idempotencyGuard.getCachedKeys()
+        ));
+    }
+
+    @GetMapping("/outbox/stats")
+    public ResponseEntity<Map<String, Object>> outboxStats() {
+        return ResponseEntity.ok(Map.of(
+                "enabled", outboxRelay.isEnabled(),
+                "relayed", outboxRelay.getRelayedCount(),
+                "failed", outboxRelay.getFailedCount()
+        ));
+    }
+
+    @GetMapping("/compression/stats")
+    public ResponseEntity<Map<String, Object>> compressionStats() {
+        return ResponseEntity.ok(Map.of(
+                "enabled", payloadCompressor.isEnabled(),
+                "compressed", payloadCompressor.getCompressedCount(),
+                "skipped", payloadCompressor.getSkippedCount(),
+                "decompressed", payloadCompressor.getDecompressedCount(),
+                "ratio", payloadCompressor.getCompressionRatio(),
+                "compress_time_ms", payloadCompressor.getCompressTimeMs(),
+                "decompress_time_ms", payloadCompressor.getDecompressTimeMs()
+        ));
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(Map.of(
+                "enabled", recentMessageCache.isEnabled(),
+                "hits", recentMessageCache.getHitCount(),
+                "misses", recentMessageCache.getMissCount(),
+                "hit_rate", recentMessageCache.getHitRate(),
+                "evictions", recentMessageCache.getEvictionCount(),
+                "estimated_bytes", recentMessageCache.getEstimatedBytes()
+        ));
+    }
+
+    static Message newMessage(SendMessageRequest request) {
+        // Id timeuuid: ordena as mensagens dentro da partição do remetente
+        UUID id = Uuids.timeBased();
+        return new Message(
+                id,
+                request.sender(),
+                request.message(),
+                Uuids.unixTimestamp(id),
+                MessageStatus.SENT.value()
         );
     }
 }
\ No newline at end of file
@@ -0,0 +1,10 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+public class SpoolFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SpoolFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Corpo de POST /api/messages/{sender}/{id}/status: o status final da mensagem.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record StatusUpdateRequest(String status) {
+}
@@ -0,0 +1,10 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+public class WriteBehindFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WriteBehindFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,213 @@
+package ifsc.edu.programacaodistribuidaeconcorrente;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estágio write-behind opcional na frente do {@link MessageRepository}.
+ * As mensagens entram em uma fila limitada em memória e uma thread de flush
+ * as grava no Cassandra em lotes, por tamanho ou por tempo.
+ * Com persistence.write-behind.enabled=false a escrita continua síncrona.
+ */
+@Slf4j
+@Component
+public class WriteBehindMessageWriter {
+
+    public enum OverflowPolicy {
+        BLOCK, REJECT, CALLER_RUNS
+    }
+
+    private final MessageRepository messageRepository;
+    private final MessagingThreads messagingThreads;
+
+    @Getter
+    @Value("${persistence.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${persistence.write-behind.capacity:10000}")
+    private int capacity;
+
+    @Value("${persistence.write-behind.batch-size:100}")
+    private int batchSize;
+
+    @Value("${persistence.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${persistence.write-behind.overflow-policy:BLOCK}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${persistence.write-behind.offer-timeout-ms:100}")
+    private long offerTimeoutMs;
+
+    @Value("${persistence.write-behind.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    private BlockingQueue<Message> queue;
+    private Thread flusher;
+    private volatile boolean running = false;
+
+    @Getter
+    private final AtomicLong flushedCount = new AtomicLong();
+    @Getter
+    private final AtomicLong failedCount = new AtomicLong();
+    @Getter
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    @Autowired
+    public WriteBehindMessageWriter(MessageRepository messageRepository, MessagingThreads messagingThreads) {
+        this.messageRepository = messageRepository;
+        this.messagingThreads = messagingThreads;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        if (!enabled) {
+            log.info("Write-behind desabilitado: escrita síncrona no Cassandra");
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        flusher = messagingThreads.start("write-behind-flusher", this::flushLoop);
+        log.info("Write-behind habilitado (capacidade: " + capacity + ", lote: " + batchSize +
+                ", intervalo: " + flushIntervalMs + "ms, overflow: " + overflowPolicy + ")");
+    }
+
+    /**
+     * Aceita a mensagem para persistência. Com write-behind habilitado retorna assim que
+     * a mensagem entra na fila; quando a fila está cheia aplica a política de overflow.
+     */
+    public void submit(Message message) {
+        if (!enabled || !running) {
+            messageRepository.saveMessage(message);
+            return;
+        }
+        if (queue.offer(message)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    if (queue.offer(message, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                rejectedCount.incrementAndGet();
+                throw new WriteBehindFullException("Fila de escrita cheia após " + offerTimeoutMs + "ms");
+            case CALLER_RUNS:
+                messageRepository.saveMessage(message);
+                return;
+            case REJECT:
+            default:
+                rejectedCount.incrementAndGet();
+                throw new WriteBehindFullException("Fila de escrita cheia");
+        }
+    }
+
+    /**
+     * Versão não bloqueante de {@link #submit(Message)}, para continuações de futures: sem write-behind
+     * a escrita é feita com executeAsync. Com a fila cheia, BLOCK não espera o offer-timeout-ms
+     * (a thread é de callback do driver ou do broker) e o future falha com {@link WriteBehindFullException}.
+     */
+    public CompletionStage<Void> submitAsync(Message message) {
+        if (!enabled || !running) {
+            return messageRepository.saveMessageAsync(message);
+        }
+        if (queue.offer(message)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+            return messageRepository.saveMessageAsync(message);
+        }
+        rejectedCount.incrementAndGet();
+        return CompletableFuture.failedFuture(new WriteBehindFullException("Fila de escrita cheia"));
+    }
+
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    private void flushLoop() {
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        List<Message> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Completa o lote até o tamanho máximo ou até o fim da janela de tempo
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+                batch = new ArrayList<>(batchSize);
+            } catch (InterruptedException e) {
+                // Interrompido no shutdown: o laço drena o que restou na fila
+                running = false;
+            }
+        }
+        log.info("Thread de write-behind finalizada");
+    }
+
+    private void flush(List<Message> batch) {
+        try {
+            // Aguardar o lote cria backpressure natural: se o Cassandra estiver lento a fila enche
+            messageRepository.saveBatchAsync(batch).toCompletableFuture().join();
+            flushedCount.addAndGet(batch.size());
+        } catch (Exception e) {
+            failedCount.addAndGet(batch.size());
+            log.error("❌ Falha ao persistir lote de {} mensagens (primeira: {}): {}",
+                    batch.size(), batch.get(0).getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Para de aceitar novas mensagens e grava tudo que ainda está na fila.
+     */
+    public void flushAndStop() {
+        if (!enabled || flusher == null || !running) {
+            return;
+        }
+        log.info("Esvaziando fila de write-behind ({} mensagens pendentes)...", queue.size());
+        running = false;
+        try {
+            flusher.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive() || !queue.isEmpty()) {
+            log.error("❌ Write-behind encerrado com {} mensagens não persistidas", queue.size());
+        } else {
+            log.info("✅ Fila de write-behind esvaziada");
+        }
+    }
+}